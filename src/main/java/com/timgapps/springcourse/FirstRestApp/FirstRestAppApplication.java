@@ -1,8 +1,13 @@
 package com.timgapps.springcourse.FirstRestApp;
 
+import com.timgapps.springcourse.FirstRestApp.mappers.GeneratedPersonMapper;
+import com.timgapps.springcourse.FirstRestApp.mappers.ModelMapperPersonMapper;
+import com.timgapps.springcourse.FirstRestApp.mappers.PersonMapper;
+import org.mapstruct.factory.Mappers;
 import org.modelmapper.ModelMapper;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 
 @SpringBootApplication
@@ -18,4 +23,18 @@ public class FirstRestAppApplication {
         return new ModelMapper();
     }
 
+    // по умолчанию используем маппер, сгенерированный MapStruct
+    @Bean
+    @ConditionalOnProperty(name = "people.mapper", havingValue = "generated", matchIfMissing = true)
+    public PersonMapper generatedPersonMapper() {
+        return Mappers.getMapper(GeneratedPersonMapper.class);
+    }
+
+    // people.mapper=modelmapper - прежний маппинг через ModelMapper (например, для A/B сравнения)
+    @Bean
+    @ConditionalOnProperty(name = "people.mapper", havingValue = "modelmapper")
+    public PersonMapper modelMapperPersonMapper(ModelMapper modelMapper) {
+        return new ModelMapperPersonMapper(modelMapper);
+    }
+
 }
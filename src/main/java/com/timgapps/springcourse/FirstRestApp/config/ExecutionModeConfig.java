@@ -0,0 +1,59 @@
+package com.timgapps.springcourse.FirstRestApp.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.support.TaskExecutorAdapter;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// режим выполнения запросов (people.execution.mode):
+// platform - по умолчанию, пул потоков Tomcat (поток на запрос, до server.tomcat.threads.max)
+// virtual  - каждый запрос выполняется в своем виртуальном потоке (нужна Java 21+),
+//            поток, ждущий ответа базы, не занимает поток ОС, поэтому медленная база не блокирует
+//            остальные запросы (например, /api/sayHello)
+@Configuration
+@ConditionalOnProperty(name = "people.execution.mode", havingValue = "virtual")
+public class ExecutionModeConfig {
+
+    private static final Logger log = LoggerFactory.getLogger(ExecutionModeConfig.class);
+
+    // Executors.newVirtualThreadPerTaskExecutor() появился только в Java 21, а проект собирается под Java 11,
+    // поэтому ищем метод через рефлексию (один раз при старте)
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService virtualThreadExecutor() {
+        try {
+            ExecutorService executor = (ExecutorService) Executors.class
+                    .getMethod("newVirtualThreadPerTaskExecutor")
+                    .invoke(null);
+            log.info("Requests are executed on virtual threads");
+            return executor;
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("people.execution.mode=virtual requires Java 21 or newer, " +
+                    "current version is " + Runtime.version(), e);
+        }
+    }
+
+    // Tomcat выполняет запросы в виртуальных потоках вместо своего пула
+    @Bean
+    public TomcatProtocolHandlerCustomizer<?> virtualThreadProtocolHandlerCustomizer(ExecutorService virtualThreadExecutor) {
+        return protocolHandler -> protocolHandler.setExecutor(virtualThreadExecutor);
+    }
+
+    // асинхронная часть запросов (например, потоковая выдача NDJSON) тоже выполняется в виртуальных потоках
+    @Bean
+    public WebMvcConfigurer virtualThreadAsyncSupportConfigurer(ExecutorService virtualThreadExecutor) {
+        return new WebMvcConfigurer() {
+            @Override
+            public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+                configurer.setTaskExecutor(new TaskExecutorAdapter(virtualThreadExecutor));
+            }
+        };
+    }
+}
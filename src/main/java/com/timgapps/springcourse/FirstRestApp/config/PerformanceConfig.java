@@ -0,0 +1,61 @@
+package com.timgapps.springcourse.FirstRestApp.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.hibernate.cfg.AvailableSettings;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+
+// профиль для production нагрузки: --spring.profiles.active=perf
+// пул соединений считается от числа ядер, включаются кэш prepared statement'ов, пакетные INSERT/UPDATE
+// и fetch size, статические настройки лежат в application-perf.properties
+// метрики пула (hikaricp.connections.active/idle/pending, hikaricp.connections.acquire) - в /actuator/metrics
+@Configuration
+@Profile("perf")
+@EnableConfigurationProperties(PerformanceProperties.class)
+public class PerformanceConfig {
+
+    // настраиваем пул до того, как он откроет первое соединение
+    // метод static, чтобы BeanPostProcessor создавался раньше остальных бинов
+    @Bean
+    public static BeanPostProcessor hikariPerformanceCustomizer(ObjectProvider<PerformanceProperties> properties) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessBeforeInitialization(Object bean, String beanName) {
+                if (bean instanceof HikariDataSource) {
+                    configure((HikariDataSource) bean, properties.getObject());
+                }
+                return bean;
+            }
+        };
+    }
+
+    private static void configure(HikariDataSource dataSource, PerformanceProperties properties) {
+        dataSource.setMaximumPoolSize(properties.getPoolSize());
+        dataSource.setMinimumIdle(Math.min(properties.getMinimumIdle(), properties.getPoolSize()));
+        dataSource.setConnectionTimeout(properties.getConnectionTimeout().toMillis());
+
+        // свойства драйвера PostgreSQL
+        dataSource.addDataSourceProperty("prepareThreshold", properties.getPrepareThreshold());
+        dataSource.addDataSourceProperty("preparedStatementCacheQueries", properties.getPreparedStatementCacheQueries());
+        dataSource.addDataSourceProperty("preparedStatementCacheSizeMiB", properties.getPreparedStatementCacheSize().toMegabytes());
+        dataSource.addDataSourceProperty("defaultRowFetchSize", properties.getFetchSize());
+        // драйвер склеивает batch из INSERT'ов в многострочные INSERT ... VALUES (...), (...)
+        dataSource.addDataSourceProperty("reWriteBatchedInserts", true);
+    }
+
+    @Bean
+    public HibernatePropertiesCustomizer hibernatePerformanceCustomizer(PerformanceProperties properties) {
+        return hibernateProperties -> {
+            hibernateProperties.put(AvailableSettings.STATEMENT_BATCH_SIZE, properties.getBatchSize());
+            hibernateProperties.put(AvailableSettings.ORDER_INSERTS, true);
+            hibernateProperties.put(AvailableSettings.ORDER_UPDATES, true);
+            hibernateProperties.put(AvailableSettings.BATCH_VERSIONED_DATA, true);
+            hibernateProperties.put(AvailableSettings.STATEMENT_FETCH_SIZE, properties.getFetchSize());
+        };
+    }
+}
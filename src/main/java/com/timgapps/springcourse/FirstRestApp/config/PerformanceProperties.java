@@ -0,0 +1,101 @@
+package com.timgapps.springcourse.FirstRestApp.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+
+// настройки профиля perf (application-perf.properties), префикс people.performance
+@ConfigurationProperties(prefix = "people.performance")
+public class PerformanceProperties {
+
+    // размер пула соединений = число ядер * poolSizePerCore (+ 1, чтобы на одном ядре пул не был из одного соединения)
+    private int poolSizePerCore = 2;
+
+    // сколько соединений пул держит открытыми без нагрузки
+    private int minimumIdle = 2;
+
+    // сколько ждать свободного соединения из пула, прежде чем запрос упадет
+    private Duration connectionTimeout = Duration.ofSeconds(2);
+
+    // после скольких выполнений драйвер PostgreSQL делает запрос серверным prepared statement
+    private int prepareThreshold = 3;
+
+    // размер кэша prepared statement'ов драйвера на одно соединение (количество запросов и объем)
+    private int preparedStatementCacheQueries = 256;
+    private DataSize preparedStatementCacheSize = DataSize.ofMegabytes(5);
+
+    // сколько строк драйвер забирает из базы за один раз при чтении результата
+    private int fetchSize = 500;
+
+    // сколько INSERT/UPDATE Hibernate отправляет одним JDBC batch'ем
+    private int batchSize = 50;
+
+    public int getPoolSize() {
+        return Runtime.getRuntime().availableProcessors() * poolSizePerCore + 1;
+    }
+
+    public int getPoolSizePerCore() {
+        return poolSizePerCore;
+    }
+
+    public void setPoolSizePerCore(int poolSizePerCore) {
+        this.poolSizePerCore = poolSizePerCore;
+    }
+
+    public int getMinimumIdle() {
+        return minimumIdle;
+    }
+
+    public void setMinimumIdle(int minimumIdle) {
+        this.minimumIdle = minimumIdle;
+    }
+
+    public Duration getConnectionTimeout() {
+        return connectionTimeout;
+    }
+
+    public void setConnectionTimeout(Duration connectionTimeout) {
+        this.connectionTimeout = connectionTimeout;
+    }
+
+    public int getPrepareThreshold() {
+        return prepareThreshold;
+    }
+
+    public void setPrepareThreshold(int prepareThreshold) {
+        this.prepareThreshold = prepareThreshold;
+    }
+
+    public int getPreparedStatementCacheQueries() {
+        return preparedStatementCacheQueries;
+    }
+
+    public void setPreparedStatementCacheQueries(int preparedStatementCacheQueries) {
+        this.preparedStatementCacheQueries = preparedStatementCacheQueries;
+    }
+
+    public DataSize getPreparedStatementCacheSize() {
+        return preparedStatementCacheSize;
+    }
+
+    public void setPreparedStatementCacheSize(DataSize preparedStatementCacheSize) {
+        this.preparedStatementCacheSize = preparedStatementCacheSize;
+    }
+
+    public int getFetchSize() {
+        return fetchSize;
+    }
+
+    public void setFetchSize(int fetchSize) {
+        this.fetchSize = fetchSize;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+}
@@ -0,0 +1,50 @@
+package com.timgapps.springcourse.FirstRestApp.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.timgapps.springcourse.FirstRestApp.ratelimit.RateLimitEndpoint;
+import com.timgapps.springcourse.FirstRestApp.ratelimit.RateLimitInterceptor;
+import com.timgapps.springcourse.FirstRestApp.ratelimit.RateLimitJmxExtension;
+import com.timgapps.springcourse.FirstRestApp.ratelimit.RateLimitProperties;
+import com.timgapps.springcourse.FirstRestApp.ratelimit.RateLimiters;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+// ограничение запросов к /people (people.rate-limit.*), выключается people.rate-limit.enabled=false
+@Configuration
+@ConditionalOnProperty(name = "people.rate-limit.enabled", matchIfMissing = true)
+@EnableConfigurationProperties(RateLimitProperties.class)
+public class RateLimitConfig {
+
+    @Bean
+    public RateLimiters rateLimiters(RateLimitProperties properties, MeterRegistry meterRegistry) {
+        return new RateLimiters(properties, meterRegistry);
+    }
+
+    @Bean
+    public RateLimitEndpoint rateLimitEndpoint(RateLimiters rateLimiters) {
+        return new RateLimitEndpoint(rateLimiters);
+    }
+
+    @Bean
+    public RateLimitJmxExtension rateLimitJmxExtension(RateLimiters rateLimiters) {
+        return new RateLimitJmxExtension(rateLimiters);
+    }
+
+    @Bean
+    public WebMvcConfigurer rateLimitInterceptorConfigurer(RateLimitProperties properties, RateLimiters rateLimiters,
+                                                           ObjectMapper objectMapper) {
+        RateLimitInterceptor interceptor = new RateLimitInterceptor(rateLimiters, objectMapper,
+                properties.getClientHeader(), properties.getApiKeys());
+        return new WebMvcConfigurer() {
+            @Override
+            public void addInterceptors(InterceptorRegistry registry) {
+                registry.addInterceptor(interceptor).addPathPatterns("/people/**");
+            }
+        };
+    }
+}
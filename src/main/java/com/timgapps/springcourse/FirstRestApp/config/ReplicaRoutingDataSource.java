@@ -0,0 +1,324 @@
+package com.timgapps.springcourse.FirstRestApp.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+// направляет соединения readOnly транзакций (@Transactional(readOnly = true)) в реплики по кругу,
+// все остальное - в основную базу
+// оборачивается в LazyConnectionDataSourceProxy (см. ReplicaRoutingConfig): соединение берется при первом
+// запросе, когда признак readOnly транзакции уже известен
+// клиент, который сам только что писал, еще read-your-writes-window читает из основной базы: запись помечается
+// атрибутом текущего HTTP запроса и cookie people-last-write со временем записи, остальные клиенты
+// продолжают читать из реплик; вне HTTP запроса (фоновые потоки) клиента нет и чтение идет в реплики
+// чтения, результат которых запоминается надолго (кэш людей), идут в основную базу через readFromPrimary:
+// из отстающей реплики в кэш попала бы строка, которую запись только что из него убрала
+// реплика, к которой не удалось подключиться, выводится из ротации (чтение уходит в основную базу)
+// и возвращается, когда фоновая проверка снова сможет к ней подключиться
+// метрики регистрируются через MeterBinder: MeterRegistry сам зависит от DataSource (метрики пулов)
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource implements DisposableBean, MeterBinder {
+
+    private static final Logger log = LoggerFactory.getLogger(ReplicaRoutingDataSource.class);
+
+    private static final String PRIMARY = "primary";
+
+    public static final String LAST_WRITE_COOKIE = "people-last-write";
+
+    private static final String LAST_WRITE_ATTRIBUTE = ReplicaRoutingDataSource.class.getName() + ".LAST_WRITE";
+
+    // текущий поток выполняет readFromPrimary
+    private static final ThreadLocal<Boolean> READ_FROM_PRIMARY = new ThreadLocal<>();
+
+    private final DataSource primary;
+
+    private final List<DataSource> replicas;
+
+    // healthy[i] - реплика i в ротации
+    private final boolean[] healthy;
+    private volatile int[] healthyReplicas;
+
+    private final AtomicInteger next = new AtomicInteger();
+
+    private volatile long readYourWritesWindowMillis;
+
+    private final ScheduledExecutorService healthChecker;
+
+    private final LongAdder primaryConnections = new LongAdder();
+    private final LongAdder replicaConnections = new LongAdder();
+
+    public ReplicaRoutingDataSource(DataSource primary, List<DataSource> replicas, Duration readYourWritesWindow,
+                                    Duration healthCheckInterval) {
+        this.primary = primary;
+        this.replicas = replicas;
+        this.readYourWritesWindowMillis = readYourWritesWindow.toMillis();
+
+        Map<Object, Object> targets = new HashMap<>();
+        targets.put(PRIMARY, primary);
+        for (int i = 0; i < replicas.size(); i++) {
+            targets.put(i, replicas.get(i));
+        }
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(primary);
+        setLenientFallback(false);
+
+        this.healthy = new boolean[replicas.size()];
+        for (int i = 0; i < healthy.length; i++) {
+            healthy[i] = true;
+        }
+        updateHealthyReplicas();
+
+        healthChecker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "replica-health-check");
+            thread.setDaemon(true);
+            return thread;
+        });
+        healthChecker.scheduleWithFixedDelay(this::checkReplicas, healthCheckInterval.toMillis(),
+                healthCheckInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("people.datasource.replicas.healthy", this, dataSource -> dataSource.healthyReplicas.length)
+                .description("Read replicas currently in rotation")
+                .register(registry);
+        connections(registry, PRIMARY, primaryConnections);
+        connections(registry, "replica", replicaConnections);
+
+        // пулы реплик не бины, метрики Hikari для них Spring Boot сам не включит
+        for (DataSource replica : replicas) {
+            if (replica instanceof HikariDataSource) {
+                HikariDataSource hikari = (HikariDataSource) replica;
+                if (hikari.getMetricRegistry() == null && hikari.getMetricsTrackerFactory() == null) {
+                    hikari.setMetricRegistry(registry);
+                }
+            }
+        }
+    }
+
+    private static void connections(MeterRegistry registry, String target, LongAdder counter) {
+        FunctionCounter.builder("people.datasource.connections", counter, LongAdder::sum)
+                .description("Connections handed out by the routing data source")
+                .tag("target", target)
+                .register(registry);
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            if (TransactionSynchronizationManager.isSynchronizationActive()) {
+                // после коммита пишущей транзакции этот клиент некоторое время читает из основной базы
+                TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                    @Override
+                    public void afterCompletion(int status) {
+                        if (status == STATUS_COMMITTED) {
+                            rememberWrite();
+                        }
+                    }
+                });
+            }
+            return PRIMARY;
+        }
+        if (READ_FROM_PRIMARY.get() != null || wroteRecently()) {
+            return PRIMARY;
+        }
+        int[] candidates = healthyReplicas;
+        if (candidates.length == 0) {
+            return PRIMARY;
+        }
+        return candidates[Math.floorMod(next.getAndIncrement(), candidates.length)];
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return connect(DataSource::getConnection);
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return connect(target -> target.getConnection(username, password));
+    }
+
+    private Connection connect(Connector connector) throws SQLException {
+        Object key = determineCurrentLookupKey();
+        if (PRIMARY.equals(key)) {
+            primaryConnections.increment();
+            return connector.connect(primary);
+        }
+        int replica = (Integer) key;
+        try {
+            Connection connection = connector.connect(replicas.get(replica));
+            replicaConnections.increment();
+            return connection;
+        } catch (SQLException e) {
+            log.warn("Read replica {} is unavailable, reading from the primary until it recovers: {}",
+                    replica, e.getMessage());
+            markHealthy(replica, false);
+            primaryConnections.increment();
+            return connector.connect(primary);
+        }
+    }
+
+    // getConnection() или getConnection(username, password) выбранной базы
+    private interface Connector {
+        Connection connect(DataSource target) throws SQLException;
+    }
+
+    // выполняет action так, что его readOnly транзакции читают из основной базы (не помечая клиента как писавшего)
+    // соединение должно браться внутри action: транзакция, уже получившая соединение реплики, его не сменит
+    // без включенной маршрутизации просто выполняет action
+    public static <T> T readFromPrimary(Supplier<T> action) {
+        if (READ_FROM_PRIMARY.get() != null) {
+            return action.get();
+        }
+        READ_FROM_PRIMARY.set(Boolean.TRUE);
+        try {
+            return action.get();
+        } finally {
+            READ_FROM_PRIMARY.remove();
+        }
+    }
+
+    // отмечает запись в текущем HTTP запросе и в cookie ответа, если ответ еще не отправлен
+    private void rememberWrite() {
+        ServletRequestAttributes attributes = currentRequest();
+        long window = readYourWritesWindowMillis;
+        if (attributes == null || window <= 0) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        attributes.getRequest().setAttribute(LAST_WRITE_ATTRIBUTE, now);
+        HttpServletResponse response = attributes.getResponse();
+        if (response != null && !response.isCommitted()) {
+            Cookie cookie = new Cookie(LAST_WRITE_COOKIE, Long.toString(now));
+            cookie.setPath("/");
+            cookie.setHttpOnly(true);
+            cookie.setMaxAge((int) Math.max(1, TimeUnit.MILLISECONDS.toSeconds(window + 999)));
+            response.addCookie(cookie);
+        }
+    }
+
+    // клиент писал в этом же запросе или его cookie people-last-write моложе окна read-your-writes
+    // cookie задает клиент, но так он может направить в основную базу только свои же чтения
+    private boolean wroteRecently() {
+        ServletRequestAttributes attributes = currentRequest();
+        long window = readYourWritesWindowMillis;
+        if (attributes == null || window <= 0) {
+            return false;
+        }
+        HttpServletRequest request = attributes.getRequest();
+        if (request.getAttribute(LAST_WRITE_ATTRIBUTE) != null) {
+            return true;
+        }
+        Cookie[] cookies = request.getCookies();
+        if (cookies == null) {
+            return false;
+        }
+        for (Cookie cookie : cookies) {
+            if (LAST_WRITE_COOKIE.equals(cookie.getName())) {
+                try {
+                    long age = System.currentTimeMillis() - Long.parseLong(cookie.getValue());
+                    return age >= 0 && age < window;
+                } catch (NumberFormatException e) {
+                    return false;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static ServletRequestAttributes currentRequest() {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        return attributes instanceof ServletRequestAttributes ? (ServletRequestAttributes) attributes : null;
+    }
+
+    public void setReadYourWritesWindow(Duration readYourWritesWindow) {
+        this.readYourWritesWindowMillis = readYourWritesWindow.toMillis();
+    }
+
+    // реплики, которые сейчас в ротации
+    public int[] getHealthyReplicas() {
+        return healthyReplicas.clone();
+    }
+
+    // проверяет только выпавшие реплики: рабочие проверяются самими запросами
+    void checkReplicas() {
+        for (int i = 0; i < replicas.size(); i++) {
+            if (isHealthy(i)) {
+                continue;
+            }
+            try (Connection connection = replicas.get(i).getConnection()) {
+                if (connection.isValid(1)) {
+                    log.info("Read replica {} is available again", i);
+                    markHealthy(i, true);
+                }
+            } catch (SQLException e) {
+                log.debug("Read replica {} is still unavailable: {}", i, e.getMessage());
+            }
+        }
+    }
+
+    private synchronized boolean isHealthy(int replica) {
+        return healthy[replica];
+    }
+
+    private synchronized void markHealthy(int replica, boolean value) {
+        if (healthy[replica] != value) {
+            healthy[replica] = value;
+            updateHealthyReplicas();
+        }
+    }
+
+    private synchronized void updateHealthyReplicas() {
+        int count = 0;
+        for (boolean value : healthy) {
+            if (value) {
+                count++;
+            }
+        }
+        int[] result = new int[count];
+        for (int i = 0, j = 0; i < healthy.length; i++) {
+            if (healthy[i]) {
+                result[j++] = i;
+            }
+        }
+        healthyReplicas = result;
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        healthChecker.shutdownNow();
+        for (DataSource replica : replicas) {
+            if (replica instanceof AutoCloseable) {
+                ((AutoCloseable) replica).close();
+            }
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package com.timgapps.springcourse.FirstRestApp.config;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+// замена hibernate.show_sql: show_sql синхронно пишет каждый запрос в stdout прямо в потоке запроса,
+// здесь в лог попадает только доля запросов (sampleRate от 0 до 1), а сам лог асинхронный (см. logback-spring.xml)
+public class SampledSqlLogger implements StatementInspector {
+
+    public static final String LOGGER_NAME = "com.timgapps.springcourse.FirstRestApp.sql";
+
+    private static final Logger log = LoggerFactory.getLogger(LOGGER_NAME);
+
+    private final double sampleRate;
+
+    public SampledSqlLogger(double sampleRate) {
+        this.sampleRate = sampleRate;
+    }
+
+    @Override
+    public String inspect(String sql) {
+        if (sampleRate > 0 && (sampleRate >= 1 || ThreadLocalRandom.current().nextDouble() < sampleRate)
+                && log.isInfoEnabled()) {
+            log.info(sql);
+        }
+        return sql; // запрос не меняем
+    }
+}
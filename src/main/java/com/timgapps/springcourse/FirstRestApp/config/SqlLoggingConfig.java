@@ -0,0 +1,18 @@
+package com.timgapps.springcourse.FirstRestApp.config;
+
+import org.hibernate.cfg.AvailableSettings;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class SqlLoggingConfig {
+
+    // people.sql-log.sample-rate: 1 - логировать все запросы, 0.01 - каждый сотый, 0 - ничего
+    @Bean
+    public HibernatePropertiesCustomizer sampledSqlLoggerCustomizer(
+            @Value("${people.sql-log.sample-rate:0}") double sampleRate) {
+        return properties -> properties.put(AvailableSettings.STATEMENT_INSPECTOR, new SampledSqlLogger(sampleRate));
+    }
+}
@@ -0,0 +1,21 @@
+package com.timgapps.springcourse.FirstRestApp.config;
+
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+// people.startup.exit-after-refresh=true - приложение запускается и сразу завершается
+// нужно для "тренировочного" запуска при сборке архива CDS (профиль maven cds): JVM записывает в архив
+// классы, загруженные за время старта, и следующие запуски берут их из архива, а не грузят и проверяют заново
+@Configuration
+@ConditionalOnProperty(name = "people.startup.exit-after-refresh", havingValue = "true")
+public class StartupConfig {
+
+    @Bean
+    public ApplicationListener<ApplicationReadyEvent> exitAfterStartup() {
+        return event -> System.exit(SpringApplication.exit(event.getApplicationContext()));
+    }
+}
@@ -1,23 +1,62 @@
 package com.timgapps.springcourse.FirstRestApp.controllers;
 
 import com.timgapps.springcourse.FirstRestApp.dto.PersonDTO;
+import com.timgapps.springcourse.FirstRestApp.dto.PersonPatchDTO;
+import com.timgapps.springcourse.FirstRestApp.dto.PersonSearchDTO;
+import com.timgapps.springcourse.FirstRestApp.idempotency.IdempotencyStore;
+import com.timgapps.springcourse.FirstRestApp.mappers.PersonMapper;
+import com.timgapps.springcourse.FirstRestApp.metrics.PeopleMetrics;
 import com.timgapps.springcourse.FirstRestApp.models.Person;
+import com.timgapps.springcourse.FirstRestApp.ratelimit.RateLimited;
+import com.timgapps.springcourse.FirstRestApp.repositories.PeopleStamp;
+import com.timgapps.springcourse.FirstRestApp.repositories.PersonSpecifications;
 import com.timgapps.springcourse.FirstRestApp.services.PeopleService;
+import com.timgapps.springcourse.FirstRestApp.services.PersonIngestQueue;
+import com.timgapps.springcourse.FirstRestApp.util.PeopleStatsResponse;
+import com.timgapps.springcourse.FirstRestApp.util.PersonBatchErrorResponse;
+import com.timgapps.springcourse.FirstRestApp.util.PersonBatchResponse;
+import com.timgapps.springcourse.FirstRestApp.util.PersonEmailConflictException;
 import com.timgapps.springcourse.FirstRestApp.util.PersonErrorResponse;
-import com.timgapps.springcourse.FirstRestApp.util.PersonNotCreatedException;
+import com.timgapps.springcourse.FirstRestApp.util.PersonFieldError;
+import com.timgapps.springcourse.FirstRestApp.util.PersonIngestStatus;
 import com.timgapps.springcourse.FirstRestApp.util.PersonNotFoundException;
-import org.modelmapper.ModelMapper;
+import com.timgapps.springcourse.FirstRestApp.util.PersonValidator;
+import com.timgapps.springcourse.FirstRestApp.util.PersonVersionConflictException;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.ui.ModelMap;
-import org.springframework.validation.BindingResult;
-import org.springframework.validation.FieldError;
 import org.springframework.web.bind.annotation.*;
-
-import javax.validation.Valid;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+
+import javax.validation.groups.Default;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Map;
+
+import static com.timgapps.springcourse.FirstRestApp.metrics.PeopleMetrics.Operation.*;
 
 
 // в контроллере должно быть минимальное кол-во логики, логика должна быть перенесена в Service
@@ -25,38 +64,201 @@ import java.util.stream.Collectors;
 @RequestMapping("/people")
 public class PeopleController {
 
+    // тип содержимого для потоковой выдачи: один JSON объект на строку (newline delimited JSON)
+    public static final String APPLICATION_NDJSON_VALUE = "application/x-ndjson";
+
+    // тип содержимого для PATCH по RFC 7396 (JSON Merge Patch)
+    public static final String APPLICATION_MERGE_PATCH_JSON_VALUE = "application/merge-patch+json";
+
+    // по каким полям можно сортировать результаты поиска: параметр запроса -> поле модели Person
+    private static final Map<String, String> SEARCH_SORT_PROPERTIES = Map.of(
+            "id", "id",
+            "name", "name",
+            "age", "age",
+            "email", "email",
+            "createdAt", "created_at"
+    );
+
     private final PeopleService peopleService;
 
-    private final ModelMapper modelMapper;
+    private final PersonMapper personMapper;
+
+    private final ObjectMapper objectMapper;
+
+    private final PersonValidator personValidator;
+
+    private final PeopleMetrics peopleMetrics;
+
+    private final IdempotencyStore idempotencyStore;
+
+    // очередь асинхронного создания людей, null если people.ingest.mode=sync
+    private final PersonIngestQueue ingestQueue;
+
+    // размер страницы, если клиент не передал limit, и максимально допустимый размер страницы
+    private final int defaultLimit;
+    private final int maxLimit;
+
+    // сколько человек сохраняется одним JDBC batch'ем при пакетном создании
+    private final int batchChunkSize;
+
+    // дальше этого смещения поиск не листается (OFFSET заставляет базу прочитать и пропустить все строки до него)
+    private final int searchMaxOffset;
 
     @Autowired
-    public PeopleController(PeopleService peopleService, ModelMapper modelMapper) {
+    public PeopleController(PeopleService peopleService, PersonMapper personMapper, ObjectMapper objectMapper,
+                            PersonValidator personValidator, PeopleMetrics peopleMetrics,
+                            IdempotencyStore idempotencyStore, ObjectProvider<PersonIngestQueue> ingestQueue,
+                            @Value("${people.page.default-limit:100}") int defaultLimit,
+                            @Value("${people.page.max-limit:1000}") int maxLimit,
+                            @Value("${people.batch.chunk-size:500}") int batchChunkSize,
+                            @Value("${people.search.max-offset:10000}") int searchMaxOffset) {
         this.peopleService = peopleService;
-        this.modelMapper = modelMapper;
+        this.personMapper = personMapper;
+        this.objectMapper = objectMapper;
+        this.personValidator = personValidator;
+        this.peopleMetrics = peopleMetrics;
+        this.idempotencyStore = idempotencyStore;
+        this.ingestQueue = ingestQueue.getIfAvailable();
+        this.defaultLimit = defaultLimit;
+        this.maxLimit = maxLimit;
+        this.batchChunkSize = batchChunkSize;
+        this.searchMaxOffset = searchMaxOffset;
     }
 
 
+    // список людей отдается страницами: ?after=<последний id предыдущей страницы>&limit=N
+    // ссылка на следующую страницу передается в заголовке Link (rel="next"),
+    // если заголовка нет - значит это последняя страница
+    // ETag списка строится по количеству людей и времени последнего изменения,
+    // если клиент прислал тот же ETag (If-None-Match) - отвечаем 304 без чтения и сериализации людей
+    // формат ответа выбирается по заголовку Accept: JSON, Smile или CBOR, поэтому ETag слабый (W/) -
+    // он один на все форматы и на сжатый gzip'ом ответ (со строгим ETag Tomcat не сжимает ответ)
+    @RateLimited("list")
     @GetMapping()
-    public List<PersonDTO> getPeople() {
-//    public List<Person> getPeople() {
-//        return peopleService.findAll();  // Jackson конвертирует эти объекты в JSON
-        // и этот список мы пересылаем по сети в виде JSON'а
-        // и на другом конце, какой-нибудь сервис может принять наш список из наших
-        // объектов и что-нибудь с ними сделать
-
-        // -----------------------------------------------------------------------------------------------//
-        // исправим и тоже будем отдавать клиенту DTO вместо модели, т.к. в модели существуют поля, которые
-        // клиенту знать не нужно и не нужны
-        return peopleService.findAll()
-                .stream() // используем Stream
-                .map(this::convertToPersonDTO) // смапим все сущности в DTO, т.е. вызовем convertToPersonDTO()
-                // на каждом из этих объектов Person, которые получили из сервиса
+    public ResponseEntity<List<PersonDTO>> getPeople(@RequestParam(value = "after", defaultValue = "0") int after,
+                                                     @RequestParam(value = "limit", required = false) Integer limit,
+                                                     WebRequest webRequest) {
+        PeopleStamp stamp = peopleService.findStamp();
+        long lastModified = toEpochMillis(stamp.getLastUpdated());
+        String etag = "W/\"" + stamp.getCount() + "-" + lastModified + "\"";
+        if (webRequest.checkNotModified(etag, lastModified)) {
+            return null; // ответ 304 Not Modified уже подготовлен
+        }
+
+        int pageSize = pageSize(limit);
+
+        // запрашиваем на одного человека больше, чтобы понять, есть ли следующая страница
+        List<Person> people = peopleService.findPage(after, pageSize + 1);
+        boolean hasNext = people.size() > pageSize;
+        if (hasNext) {
+            people = people.subList(0, pageSize);
+        }
+
+        List<PersonDTO> page = convertToPersonDTOs(people);
+
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .eTag(etag)
+                .lastModified(lastModified)
+                .varyBy(HttpHeaders.ACCEPT);
+        if (hasNext) {
+            String next = ServletUriComponentsBuilder.fromCurrentRequest()
+                    .replaceQueryParam("after", people.get(people.size() - 1).getId())
+                    .replaceQueryParam("limit", pageSize)
+                    .toUriString();
+            response.header(HttpHeaders.LINK, "<" + next + ">; rel=\"next\"");
+        }
+        return response.body(page);
+    }
 
-                .collect(Collectors.toList());  // и построим список из этих DTO
+    // поиск людей: ?name=<начало имени>&email=&minAge=&maxAge=&createdFrom=&createdTo=
+    // сортировка ?sort=id|name|age|email|createdAt&direction=asc|desc, страницы ?page=N&limit=M
+    // размер страницы ограничен так же, как у списка людей, следующая страница - в заголовке Link
+    @RateLimited("search")
+    @GetMapping("/search")
+    public ResponseEntity<List<PersonDTO>> search(PersonSearchDTO criteria,
+                                                  @RequestParam(value = "sort", defaultValue = "id") String sort,
+                                                  @RequestParam(value = "direction", defaultValue = "asc") String direction,
+                                                  @RequestParam(value = "page", defaultValue = "0") int page,
+                                                  @RequestParam(value = "limit", required = false) Integer limit) {
+        String sortProperty = SEARCH_SORT_PROPERTIES.get(sort);
+        if (sortProperty == null) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Unknown sort field: " + sort);
+        }
+        Sort.Direction sortDirection = Sort.Direction.fromOptionalString(direction)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                        "Unknown sort direction: " + direction));
+        // id добавляем вторым полем сортировки, чтобы порядок страниц был однозначным
+        Sort order = Sort.by(sortDirection, sortProperty).and(Sort.by(sortDirection, "id"));
+
+        int pageSize = pageSize(limit);
+        long offset = (long) Math.max(0, page) * pageSize;
+        if (offset > searchMaxOffset) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "Page is too deep, narrow the search instead");
+        }
+
+        Specification<Person> specification = Specification
+                .where(PersonSpecifications.nameStartsWith(criteria.getName()))
+                .and(PersonSpecifications.emailEquals(criteria.getEmail()))
+                .and(PersonSpecifications.ageBetween(criteria.getMinAge(), criteria.getMaxAge()))
+                .and(PersonSpecifications.createdBetween(criteria.getCreatedFrom(), criteria.getCreatedTo()));
+
+        List<Person> people = peopleService.search(specification, order, (int) offset, pageSize + 1);
+        boolean hasNext = people.size() > pageSize;
+        if (hasNext) {
+            people = people.subList(0, pageSize);
+        }
+
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (hasNext) {
+            String next = ServletUriComponentsBuilder.fromCurrentRequest()
+                    .replaceQueryParam("page", Math.max(0, page) + 1)
+                    .replaceQueryParam("limit", pageSize)
+                    .toUriString();
+            response.header(HttpHeaders.LINK, "<" + next + ">; rel=\"next\"");
+        }
+        return response.body(convertToPersonDTOs(people));
+    }
+
+    // потоковая выдача всей таблицы в формате NDJSON (Accept: application/x-ndjson)
+    // люди читаются из базы порциями и сразу пишутся в ответ, поэтому память не зависит от размера таблицы
+    @RateLimited("stream")
+    @GetMapping(produces = APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamPeople() {
+        StreamingResponseBody body = outputStream -> {
+            try (JsonGenerator generator = objectMapper.createGenerator(outputStream)) {
+                // разделитель между объектами пишем сами - перевод строки после каждого человека
+                generator.setRootValueSeparator(null);
+                peopleService.forEachPerson(person -> {
+                    try {
+                        generator.writeObject(convertToPersonDTO(person));
+                        generator.writeRaw('\n');
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            }
+        };
+
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_TYPE, APPLICATION_NDJSON_VALUE)
+                .body(body);
     }
 
+    // прежний вариант, который загружал в память всю таблицу целиком (и сущности, и список DTO)
+//    @GetMapping()
+//    public List<PersonDTO> getPeople() {
+//        return peopleService.findAll()
+//                .stream() // используем Stream
+//                .map(this::convertToPersonDTO) // смапим все сущности в DTO, т.е. вызовем convertToPersonDTO()
+//                // на каждом из этих объектов Person, которые получили из сервиса
+//                .collect(Collectors.toList());  // и построим список из этих DTO
+//    }
+
+    @RateLimited("one")
     @GetMapping("/{id}")
-    public PersonDTO getPerson(@PathVariable("id") int id) { // с помощью аннотации @PathVariable получаем доступ
+    public ResponseEntity<PersonDTO> getPerson(@PathVariable("id") int id,
+                                               WebRequest webRequest) { // с помощью аннотации @PathVariable получаем доступ
 //    public Person getPerson(@PathVariable("id") int id) { // с помощью аннотации @PathVariable получаем доступ
         // к id, который пришел в адресе запроса ("id" помещаем в аргумент метода int id)
         // статус - 200
@@ -69,10 +271,26 @@ public class PeopleController {
         // ---------------------------------------------------------------------------//
         // исправим и тоже будем отдавать клиенту DTO вместо модели, т.к. в модели существуют поля, которые
         // клиенту знать не нужно и не нужны
-        return convertToPersonDTO(peopleService.findOne(id));
+//        return convertToPersonDTO(peopleService.findOne(id));
+
+        // ETag человека строится из id и времени последнего изменения (updated_at),
+        // если он не изменился - отвечаем 304 без маппинга в DTO и сериализации
+        Person person = peopleService.findOne(id);
+        long lastModified = toEpochMillis(person.getUpdatedAt());
+        String etag = "W/\"" + person.getId() + "-" + lastModified + "\"";
+        if (webRequest.checkNotModified(etag, lastModified)) {
+            return null;
+        }
+
+        return ResponseEntity.ok()
+                .eTag(etag)
+                .lastModified(lastModified)
+                .varyBy(HttpHeaders.ACCEPT)
+                .body(convertToPersonDTO(person));
     }
 
     // метод для создания нового человека
+    @RateLimited("create")
     @PostMapping
     // здесь мы могли возвращать любой объект, jackson его конвертирует в JSON,
     // и клиент его получит на другом конце
@@ -83,37 +301,45 @@ public class PeopleController {
     // public ResponseEntity<HttpStatus> create(@RequestBody @Valid Person person,
 
     // теперь принимает DTO
-    public ResponseEntity<HttpStatus> create(@RequestBody @Valid PersonDTO personDTO,
-                                             BindingResult bindingResult) { // помечаем параметр с помощью
+    // в асинхронном режиме (people.ingest.mode=async) отвечает 202 Accepted с tracking id,
+    // а если очередь на запись заполнена - 429 Too Many Requests
+    // проверка идет через PersonValidator, а не @Valid + BindingResult: невалидный человек сразу получает
+    // ответ 400 с ошибками по полям, без исключения и без сборки сообщения заново на каждый запрос
+    // с заголовком Idempotency-Key повтор запроса получает ответ первого (см. IdempotencyStore),
+    // человек с уже занятым email - 409
+    public ResponseEntity<?> create(@RequestBody PersonDTO personDTO,
+                                    @RequestHeader(value = IdempotencyStore.IDEMPOTENCY_KEY, required = false)
+                                    String idempotencyKey) { // помечаем параметр с помощью
         // аннотации @RequestBody, когда мы пришлем JSON в этот метод контроллера, RequestBody автоматически
         // сконвертирует его в объект класса Person
-        // аннотация @Valid будет проверять на валидность нашего человека,
-        // по аннотациям проверки в модели(Person)
-
-        // если в bindingResult есть какие-то ошибки, значит клиент прислал нам какого-то невалидного человека,
-        // то мы выкинем какое-то исключение
-        if (bindingResult.hasErrors()) {
-            // здесь ошибки валидации мы совместим в одну большую строку,
-            // эту строку мы хотим отправить обратно клиенту, чтобы он посмотрел и смог исправить данные о человеке
-            StringBuilder errorMessage = new StringBuilder();
-
-            List<FieldError> errors = bindingResult.getFieldErrors(); // добавим ошибки в List
-            for (FieldError error : errors) {
-                errorMessage.append(error.getField()) // на каком поле была совершена ошибка
-                        .append(" - ").append(error.getDefaultMessage())
-                        .append(";");
-            }
-
-            // теперь когда мы подготовили сообщение об ошибке
-            // мы должны выбросить исключение и должны клиенту отправить сообщение с этой ошибкой
-            throw new PersonNotCreatedException(errorMessage.toString());
+        if (idempotencyKey == null) {
+            return createPerson(personDTO);
+        }
+        List<Object> fingerprint = Arrays.asList(personDTO.getName(), personDTO.getAge(), personDTO.getEmail());
+        return idempotencyStore.execute(idempotencyKey, fingerprint, () -> createPerson(personDTO));
+    }
 
+    private ResponseEntity<?> createPerson(PersonDTO personDTO) {
+        // если есть какие-то ошибки, значит клиент прислал нам какого-то невалидного человека,
+        // отправляем ему ошибки, чтобы он посмотрел и смог исправить данные о человеке
+        List<PersonFieldError> errors = personValidator.validate(personDTO);
+        if (!errors.isEmpty()) {
+            return invalid(errors);
         }
         // раньше сохраняли модель
 //        peopleService.save(person); // сохраняем человека
 
         // теперь должны сконвертировать в модель нашей сущности "Person"
-        peopleService.save(convertToPerson(personDTO)); // сохраняем человека
+        if (ingestQueue != null) {
+            return enqueue(convertToPerson(personDTO));
+        }
+        try {
+            peopleService.save(convertToPerson(personDTO)); // сохраняем человека
+        } catch (PersonEmailConflictException e) {
+            // ответ, а не исключение: его сохранит IdempotencyStore
+            return new ResponseEntity<>(new PersonErrorResponse(e.getMessage(), System.currentTimeMillis()),
+                    HttpStatus.CONFLICT);
+        }
 
         return ResponseEntity.ok(HttpStatus.OK); // это такой стандартный способ ответить чем-нибудь клиенту
         // здесь вернется самый простой объект с сообщением, что все прошло успешно
@@ -121,9 +347,207 @@ public class PeopleController {
         // и отправляем HTTP ответ с пустым телом и со статусом 200
     }
 
+    // ставит человека в очередь на запись и сообщает клиенту, где смотреть его статус
+    private ResponseEntity<?> enqueue(Person person) {
+        PersonIngestStatus status = ingestQueue.submit(person);
+        if (status == null) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .header(HttpHeaders.RETRY_AFTER, "1")
+                    .body(new PersonErrorResponse("Too many persons are waiting to be saved, retry later",
+                            System.currentTimeMillis()));
+        }
+        return ResponseEntity.accepted()
+                .location(ServletUriComponentsBuilder.fromCurrentContextPath()
+                        .path("/people/ingest/{trackingId}")
+                        .buildAndExpand(status.getTrackingId())
+                        .toUri())
+                .body(status);
+    }
+
+    // полное изменение человека: в теле все поля и версия, которую клиент получил вместе с человеком
+    // ответ 204 без тела (новая версия = присланная + 1) и новый ETag, 409 - человека успели изменить
+    @RateLimited("update")
+    @PutMapping("/{id}")
+    public ResponseEntity<?> update(@PathVariable("id") int id, @RequestBody PersonDTO personDTO) {
+        List<PersonFieldError> errors = personValidator.validate(personDTO, Default.class, PersonDTO.Update.class);
+        if (!errors.isEmpty()) {
+            return invalid(errors);
+        }
+        LocalDateTime updatedAt = peopleService.update(id, personDTO.getVersion(),
+                personDTO.getName(), personDTO.getAge(), personDTO.getEmail());
+        return updated(id, updatedAt);
+    }
+
+    // частичное изменение: меняются только пришедшие поля, версия обязательна
+    @RateLimited("update")
+    @PatchMapping(value = "/{id}", consumes = {MediaType.APPLICATION_JSON_VALUE, APPLICATION_MERGE_PATCH_JSON_VALUE})
+    public ResponseEntity<?> patch(@PathVariable("id") int id, @RequestBody PersonPatchDTO patchDTO) {
+        List<PersonFieldError> errors = personValidator.validate(patchDTO);
+        if (!errors.isEmpty()) {
+            return invalid(errors);
+        }
+        LocalDateTime updatedAt = peopleService.update(id, patchDTO.getVersion(),
+                patchDTO.getName(), patchDTO.getAge(), patchDTO.getEmail());
+        return updated(id, updatedAt);
+    }
+
+    // удаление человека, ?version=N - удалить только если человек не менялся с этой версии (иначе 409)
+    @RateLimited("update")
+    @DeleteMapping("/{id}")
+    public ResponseEntity<Void> delete(@PathVariable("id") int id,
+                                       @RequestParam(value = "version", required = false) Integer version) {
+        peopleService.delete(id, version);
+        return ResponseEntity.noContent().build();
+    }
+
+    // ответ 400 с ошибками по полям
+    private ResponseEntity<PersonErrorResponse> invalid(List<PersonFieldError> errors) {
+        peopleMetrics.validationFailed();
+        return new ResponseEntity<>(new PersonErrorResponse(personValidator.message(errors), errors,
+                System.currentTimeMillis()), HttpStatus.BAD_REQUEST);
+    }
+
+    // ETag строится так же, как в getPerson, чтобы клиент мог сразу делать условные GET
+    private static ResponseEntity<Void> updated(int id, LocalDateTime updatedAt) {
+        long lastModified = toEpochMillis(updatedAt);
+        return ResponseEntity.noContent()
+                .eTag("W/\"" + id + "-" + lastModified + "\"")
+                .lastModified(lastModified)
+                .build();
+    }
+
+    // агрегаты для дашбордов: сколько всего людей, по возрастам и сколько создано по дням
+    // отдаются из памяти (см. PeopleStats), поэтому запрос не читает таблицу и ответ не зависит от ее размера
+    @GetMapping("/stats")
+    public PeopleStatsResponse getStats() {
+        return peopleService.getStats();
+    }
+
+    // лента изменений людей (Server-Sent Events) вместо периодического опроса GET /people
+    // событие: name - CREATED/UPDATED/DELETED, id - смещение, data - PersonChangeEvent в JSON
+    // после обрыва клиент переподключается с заголовком Last-Event-ID (браузерный EventSource делает это сам)
+    // или с параметром ?after=<смещение> и получает пропущенные изменения
+    @GetMapping(value = "/changes", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter getChanges(@RequestHeader(value = "Last-Event-ID", required = false) String lastEventId,
+                                 @RequestParam(value = "after", required = false) String after) {
+        SseEmitter emitter;
+        try {
+            emitter = peopleService.subscribeToChanges(lastEventId != null ? lastEventId : after);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+        if (emitter == null) {
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Too many change subscribers");
+        }
+        return emitter;
+    }
+
+    // статус человека, принятого в асинхронном режиме: QUEUED, WRITTEN (с id) или FAILED
+    @GetMapping("/ingest/{trackingId}")
+    public ResponseEntity<?> getIngestStatus(@PathVariable("trackingId") String trackingId) {
+        PersonIngestStatus status = ingestQueue == null ? null : ingestQueue.getStatus(trackingId);
+        if (status == null) {
+            return new ResponseEntity<>(new PersonErrorResponse("Tracking id wasn't found!",
+                    System.currentTimeMillis()), HttpStatus.NOT_FOUND);
+        }
+        return ResponseEntity.ok(status);
+    }
+
+    // пакетное создание людей: принимает JSON массив или NDJSON поток из PersonDTO
+    // тело запроса читается потоком, каждый человек валидируется отдельно,
+    // валидные сохраняются пачками по batchChunkSize, ошибки возвращаются по каждому элементу,
+    // а не роняют весь запрос
+    @RateLimited("batch")
+    @PostMapping(value = "/batch", consumes = {MediaType.APPLICATION_JSON_VALUE, APPLICATION_NDJSON_VALUE})
+    public ResponseEntity<PersonBatchResponse> createBatch(InputStream inputStream) throws IOException {
+        List<PersonBatchErrorResponse> errors = new ArrayList<>();
+        List<Person> chunk = new ArrayList<>(batchChunkSize);
+        List<Integer> chunkIndexes = new ArrayList<>(batchChunkSize);
+        int created = 0;
+        int index = 0;
+
+        // readValues умеет читать как элементы JSON массива, так и объекты, идущие друг за другом (NDJSON)
+        try (MappingIterator<PersonDTO> people = objectMapper.readerFor(PersonDTO.class).readValues(inputStream)) {
+            while (true) {
+                PersonDTO personDTO;
+                try {
+                    if (!people.hasNextValue()) {
+                        break;
+                    }
+                    personDTO = people.nextValue();
+                } catch (JsonProcessingException e) {
+                    // дальше тело запроса прочитать не получится, сохраняем то, что уже приняли
+                    errors.add(new PersonBatchErrorResponse(index, "Malformed JSON: " + e.getOriginalMessage(),
+                            System.currentTimeMillis()));
+                    break;
+                }
+
+                List<PersonFieldError> fieldErrors = personDTO == null ? null : personValidator.validate(personDTO);
+                if (fieldErrors == null) {
+                    peopleMetrics.validationFailed();
+                    errors.add(new PersonBatchErrorResponse(index, "Person should not be null",
+                            System.currentTimeMillis()));
+                } else if (!fieldErrors.isEmpty()) {
+                    peopleMetrics.validationFailed();
+                    errors.add(new PersonBatchErrorResponse(index, personValidator.message(fieldErrors), fieldErrors,
+                            System.currentTimeMillis()));
+                } else {
+                    chunk.add(convertToPerson(personDTO));
+                    chunkIndexes.add(index);
+                    if (chunk.size() == batchChunkSize) {
+                        created += saveChunk(chunk, chunkIndexes, errors);
+                        chunk.clear();
+                        chunkIndexes.clear();
+                    }
+                }
+                index++;
+            }
+        }
+        created += saveChunk(chunk, chunkIndexes, errors);
+
+        errors.sort(Comparator.comparingInt(PersonBatchErrorResponse::getIndex));
+        return ResponseEntity.ok(new PersonBatchResponse(created, errors));
+    }
+
+    // сохраняет пачку одним batch'ем, если пачка не прошла (например, ошибка в одной из строк),
+    // сохраняем людей из нее по одному, чтобы найти конкретные строки с ошибками
+    private int saveChunk(List<Person> chunk, List<Integer> chunkIndexes, List<PersonBatchErrorResponse> errors) {
+        if (chunk.isEmpty()) {
+            return 0;
+        }
+        try {
+            // люди с уже занятым email не сохраняются, ошибка по каждому из них, остальные сохранены
+            List<Person> conflicts = peopleService.saveAll(chunk);
+            for (int i = 0; i < chunk.size() && !conflicts.isEmpty(); i++) {
+                if (conflicts.contains(chunk.get(i))) {
+                    errors.add(new PersonBatchErrorResponse(chunkIndexes.get(i),
+                            PersonEmailConflictException.MESSAGE, System.currentTimeMillis()));
+                }
+            }
+            return chunk.size() - conflicts.size();
+        } catch (DataAccessException e) {
+            int created = 0;
+            for (int i = 0; i < chunk.size(); i++) {
+                try {
+                    peopleService.save(chunk.get(i));
+                    created++;
+                } catch (DataAccessException ex) {
+                    errors.add(new PersonBatchErrorResponse(chunkIndexes.get(i),
+                            ex.getMostSpecificCause().getMessage(), System.currentTimeMillis()));
+                } catch (PersonEmailConflictException ex) {
+                    errors.add(new PersonBatchErrorResponse(chunkIndexes.get(i), ex.getMessage(),
+                            System.currentTimeMillis()));
+                }
+            }
+            return created;
+        }
+    }
+
     @ExceptionHandler
     // метод обрабатывает исключение
     private ResponseEntity<PersonErrorResponse> handleException(PersonNotFoundException e) {
+        peopleMetrics.notFound();
+
         // создаем наш response(объект, который мы хотим вернуть человеку
         PersonErrorResponse personErrorResponse = new PersonErrorResponse(
                 "Person with this id wasn't found!",
@@ -135,14 +559,18 @@ public class PeopleController {
     }
 
     @ExceptionHandler
-    ResponseEntity<PersonErrorResponse> handleException(PersonNotCreatedException e) {
+    ResponseEntity<PersonErrorResponse> handleException(PersonEmailConflictException e) {
+        PersonErrorResponse response = new PersonErrorResponse(e.getMessage(), System.currentTimeMillis());
+        return new ResponseEntity<>(response, HttpStatus.CONFLICT);
+    }
+
+    @ExceptionHandler
+    ResponseEntity<PersonErrorResponse> handleException(PersonVersionConflictException e) {
         PersonErrorResponse response = new PersonErrorResponse(
-                e.getMessage(),
+                "Person was changed by someone else, reload it and try again",
                 System.currentTimeMillis()
         );
-
-        // в HTTP ответе тело ответа (response) и статус в заголовке
-        return new ResponseEntity<>(response, HttpStatus.BAD_REQUEST);
+        return new ResponseEntity<>(response, HttpStatus.CONFLICT); // CONFLICT - 409 статус
     }
 
     private Person convertToPerson(PersonDTO personDTO) {
@@ -181,12 +609,40 @@ public class PeopleController {
         // modelMapper найдет все поля, которые совпадают по названию (например поле "name" оно совпадет с
         // полем "name" модели)
 
-        return modelMapper.map(personDTO, Person.class);   // маппим PersonDTO в модель Person
+//        return modelMapper.map(personDTO, Person.class);   // маппим PersonDTO в модель Person
         // ModelMapper берет на себя полностью маппинг между DTO и моделью
+
+        // ModelMapper делает маппинг через рефлексию на каждый объект, теперь маппинг делает PersonMapper,
+        // код которого генерирует MapStruct при компиляции (ModelMapper можно включить свойством people.mapper)
+        long start = System.nanoTime();
+        Person person = personMapper.toPerson(personDTO);
+        peopleMetrics.record(CONVERSION_TO_MODEL, start); // время маппинга пишется в метрику people.conversion
+        return person;
+    }
+
+    // размер страницы: limit клиента, ограниченный сверху maxLimit, или размер по умолчанию
+    private int pageSize(Integer limit) {
+        return limit == null ? defaultLimit : Math.max(1, Math.min(limit, maxLimit));
+    }
+
+    // время в миллисекундах для заголовков ETag и Last-Modified, -1 если время неизвестно
+    private static long toEpochMillis(LocalDateTime dateTime) {
+        return dateTime == null ? -1 : dateTime.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
     }
 
     // принимает модель Person и отдает DTO
     private PersonDTO convertToPersonDTO(Person person) {
-        return modelMapper.map(person, PersonDTO.class);    // смаппится модель в DTO
+//        return modelMapper.map(person, PersonDTO.class);    // смаппится модель в DTO
+        long start = System.nanoTime();
+        PersonDTO personDTO = personMapper.toPersonDTO(person);    // смаппится модель в DTO
+        peopleMetrics.record(CONVERSION_TO_DTO, start);
+        return personDTO;
+    }
+
+    private List<PersonDTO> convertToPersonDTOs(List<Person> people) {
+        long start = System.nanoTime();
+        List<PersonDTO> personDTOs = personMapper.toPersonDTOs(people);
+        peopleMetrics.record(CONVERSION_TO_DTO_LIST, start);
+        return personDTOs;
     }
 }
@@ -4,6 +4,7 @@ import javax.persistence.Column;
 import javax.validation.constraints.Email;
 import javax.validation.constraints.Min;
 import javax.validation.constraints.NotEmpty;
+import javax.validation.constraints.NotNull;
 import javax.validation.constraints.Size;
 
 
@@ -32,6 +33,16 @@ public class PersonDTO {
     @NotEmpty(message = "Name should not be empty")
     private String email;
 
+    // версия человека: клиент получает ее вместе с человеком и присылает обратно при изменении (PUT),
+    // если человека успели изменить другие - версия не совпадет и клиент получит 409 Conflict
+    // при создании не используется, при изменении обязательна (группа Update)
+    @NotNull(groups = Update.class, message = "Version should not be empty")
+    private Integer version;
+
+    // проверки только для PUT, при создании не применяются
+    public interface Update {
+    }
+
     public String getName() {
         return name;
     }
@@ -55,4 +66,12 @@ public class PersonDTO {
     public void setEmail(String email) {
         this.email = email;
     }
+
+    public Integer getVersion() {
+        return version;
+    }
+
+    public void setVersion(Integer version) {
+        this.version = version;
+    }
 }
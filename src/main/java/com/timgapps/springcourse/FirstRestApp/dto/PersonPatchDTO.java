@@ -0,0 +1,57 @@
+package com.timgapps.springcourse.FirstRestApp.dto;
+
+import javax.validation.constraints.Email;
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Size;
+
+// частичное изменение человека (PATCH /people/{id}): поле, которое не пришло (null), не меняется
+// поэтому здесь нет @NotEmpty, а age - Integer, а не int
+public class PersonPatchDTO {
+
+    @Size(min = 2, max = 30, message = "Name should be between 2 and 30 characters")
+    private String name;
+
+    @Min(value = 0, message = "Age should be greater than 0")
+    private Integer age;
+
+    @Email
+    @Size(min = 1, message = "Email should not be empty")
+    private String email;
+
+    // версия, которую клиент видел последней
+    @NotNull(message = "Version should not be empty")
+    private Integer version;
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public Integer getAge() {
+        return age;
+    }
+
+    public void setAge(Integer age) {
+        this.age = age;
+    }
+
+    public String getEmail() {
+        return email;
+    }
+
+    public void setEmail(String email) {
+        this.email = email;
+    }
+
+    public Integer getVersion() {
+        return version;
+    }
+
+    public void setVersion(Integer version) {
+        this.version = version;
+    }
+}
@@ -0,0 +1,108 @@
+package com.timgapps.springcourse.FirstRestApp.idempotency;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.timgapps.springcourse.FirstRestApp.util.PersonErrorResponse;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.function.Supplier;
+
+// ответы на запросы с заголовком Idempotency-Key: повтор запроса (клиент не дождался ответа по таймауту)
+// получает сохраненный ответ первого запроса и не идет в базу
+// хранилище в памяти, ограничено по количеству ключей и времени жизни (people.idempotency.*),
+// ключ должен быть уникальным для каждой операции клиента (например, UUID)
+// пока первый запрос выполняется, повтор получает 409; тот же ключ с другим телом запроса - 422
+// ответы 5xx и 429 не сохраняются: после них запрос можно повторить с тем же ключом
+@Component
+public class IdempotencyStore {
+
+    public static final String IDEMPOTENCY_KEY = "Idempotency-Key";
+
+    // заголовок в ответе, отданном из хранилища
+    public static final String IDEMPOTENT_REPLAYED = "Idempotent-Replayed";
+
+    public static final int MAX_KEY_LENGTH = 255;
+
+    private final Cache<String, Entry> entries;
+
+    private final Counter replayed;
+
+    @Autowired
+    public IdempotencyStore(@Value("${people.idempotency.maximum-size:100000}") long maximumSize,
+                            @Value("${people.idempotency.ttl:24h}") Duration ttl,
+                            MeterRegistry meterRegistry) {
+        this.entries = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(ttl)
+                .build();
+        this.replayed = Counter.builder("people.idempotency.replayed")
+                .description("Requests answered with the stored response of an earlier request with the same key")
+                .register(meterRegistry);
+    }
+
+    // выполняет action один раз для ключа key; fingerprint - содержимое запроса (с equals), по нему
+    // отличаем повтор от другого запроса с тем же ключом
+    public ResponseEntity<?> execute(String key, Object fingerprint, Supplier<ResponseEntity<?>> action) {
+        if (key.isEmpty() || key.length() > MAX_KEY_LENGTH) {
+            return error(HttpStatus.BAD_REQUEST, IDEMPOTENCY_KEY + " should be between 1 and " + MAX_KEY_LENGTH +
+                    " characters");
+        }
+
+        Entry entry = new Entry(fingerprint);
+        Entry existing = entries.asMap().putIfAbsent(key, entry);
+        if (existing != null) {
+            return replay(existing, fingerprint);
+        }
+
+        ResponseEntity<?> response;
+        try {
+            response = action.get();
+        } catch (RuntimeException e) {
+            entries.asMap().remove(key, entry);
+            throw e;
+        }
+        if (response.getStatusCode().is5xxServerError() || response.getStatusCode() == HttpStatus.TOO_MANY_REQUESTS) {
+            entries.asMap().remove(key, entry);
+        } else {
+            entry.response = response;
+        }
+        return response;
+    }
+
+    private ResponseEntity<?> replay(Entry existing, Object fingerprint) {
+        if (!existing.fingerprint.equals(fingerprint)) {
+            return error(HttpStatus.UNPROCESSABLE_ENTITY, IDEMPOTENCY_KEY + " was already used for another request");
+        }
+        ResponseEntity<?> response = existing.response;
+        if (response == null) {
+            return error(HttpStatus.CONFLICT, "A request with this " + IDEMPOTENCY_KEY + " is still in progress");
+        }
+        replayed.increment();
+        HttpHeaders headers = new HttpHeaders();
+        headers.putAll(response.getHeaders());
+        headers.set(IDEMPOTENT_REPLAYED, "true");
+        return new ResponseEntity<>(response.getBody(), headers, response.getStatusCode());
+    }
+
+    private static ResponseEntity<PersonErrorResponse> error(HttpStatus status, String message) {
+        return new ResponseEntity<>(new PersonErrorResponse(message, System.currentTimeMillis()), status);
+    }
+
+    // ответ появляется, когда первый запрос с этим ключом выполнен; до этого - null
+    private static final class Entry {
+        final Object fingerprint;
+        volatile ResponseEntity<?> response;
+
+        Entry(Object fingerprint) {
+            this.fingerprint = fingerprint;
+        }
+    }
+}
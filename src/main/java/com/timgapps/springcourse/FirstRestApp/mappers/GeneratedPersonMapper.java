@@ -0,0 +1,19 @@
+package com.timgapps.springcourse.FirstRestApp.mappers;
+
+import com.timgapps.springcourse.FirstRestApp.dto.PersonDTO;
+import com.timgapps.springcourse.FirstRestApp.models.Person;
+import org.mapstruct.Mapper;
+import org.mapstruct.Mapping;
+import org.mapstruct.ReportingPolicy;
+
+// реализацию этого интерфейса (GeneratedPersonMapperImpl) генерирует MapStruct во время компиляции:
+// это обычные вызовы геттеров и сеттеров, без рефлексии и поиска TypeMap на каждый объект
+// поля, которые назначаются на сервере (id, created_at и т.д.), из DTO не копируются
+@Mapper(unmappedTargetPolicy = ReportingPolicy.IGNORE)
+public interface GeneratedPersonMapper extends PersonMapper {
+
+    // версию назначает база, а не клиент
+    @Override
+    @Mapping(target = "version", ignore = true)
+    Person toPerson(PersonDTO personDTO);
+}
@@ -0,0 +1,39 @@
+package com.timgapps.springcourse.FirstRestApp.mappers;
+
+import com.timgapps.springcourse.FirstRestApp.dto.PersonDTO;
+import com.timgapps.springcourse.FirstRestApp.models.Person;
+import org.modelmapper.ModelMapper;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// прежний вариант маппинга через ModelMapper (рефлексия), оставлен для сравнения (people.mapper=modelmapper)
+public class ModelMapperPersonMapper implements PersonMapper {
+
+    private final ModelMapper modelMapper;
+
+    public ModelMapperPersonMapper(ModelMapper modelMapper) {
+        this.modelMapper = modelMapper;
+    }
+
+    @Override
+    public Person toPerson(PersonDTO personDTO) {
+        Person person = modelMapper.map(personDTO, Person.class);
+        person.setVersion(0); // версию назначает база, а не клиент
+        return person;
+    }
+
+    @Override
+    public PersonDTO toPersonDTO(Person person) {
+        return modelMapper.map(person, PersonDTO.class);
+    }
+
+    @Override
+    public List<PersonDTO> toPersonDTOs(List<Person> people) {
+        List<PersonDTO> personDTOs = new ArrayList<>(people.size());
+        for (Person person : people) {
+            personDTOs.add(toPersonDTO(person));
+        }
+        return personDTOs;
+    }
+}
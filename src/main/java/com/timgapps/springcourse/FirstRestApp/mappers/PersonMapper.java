@@ -0,0 +1,19 @@
+package com.timgapps.springcourse.FirstRestApp.mappers;
+
+import com.timgapps.springcourse.FirstRestApp.dto.PersonDTO;
+import com.timgapps.springcourse.FirstRestApp.models.Person;
+
+import java.util.List;
+
+// маппинг между моделью Person и PersonDTO, которым пользуется контроллер
+// реализация выбирается свойством people.mapper (см. FirstRestAppApplication):
+// generated - код, сгенерированный MapStruct при компиляции, modelmapper - прежний ModelMapper
+public interface PersonMapper {
+
+    Person toPerson(PersonDTO personDTO);
+
+    PersonDTO toPersonDTO(Person person);
+
+    // список сразу строится нужного размера, без промежуточных коллекций
+    List<PersonDTO> toPersonDTOs(List<Person> people);
+}
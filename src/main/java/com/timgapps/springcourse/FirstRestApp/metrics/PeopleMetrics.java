@@ -0,0 +1,92 @@
+package com.timgapps.springcourse.FirstRestApp.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+
+// метрики пути запроса к людям: сервис, репозиторий, маппинг DTO и счетчики ошибок
+// все таймеры и счетчики регистрируются один раз при старте, на каждый вызов только System.nanoTime()
+// и запись в уже существующий таймер - без создания тегов и других объектов
+// время самих HTTP запросов к контроллерам пишет Spring Boot в http.server.requests
+@Component
+public class PeopleMetrics {
+
+    // операции, время которых измеряется, и их имена/теги в метриках
+    public enum Operation {
+        SERVICE_FIND_ALL("people.service", "findAll"),
+        SERVICE_FIND_PAGE("people.service", "findPage"),
+        SERVICE_FIND_ONE("people.service", "findOne"),
+        SERVICE_FIND_STAMP("people.service", "findStamp"),
+        SERVICE_SEARCH("people.service", "search"),
+        SERVICE_SAVE("people.service", "save"),
+        SERVICE_SAVE_ALL("people.service", "saveAll"),
+        SERVICE_UPDATE("people.service", "update"),
+        SERVICE_DELETE("people.service", "delete"),
+
+        REPOSITORY_FIND_ALL("people.repository", "findAll"),
+        REPOSITORY_FIND_PAGE("people.repository", "findByIdGreaterThan"),
+        REPOSITORY_FIND_BY_ID("people.repository", "findById"),
+        REPOSITORY_FIND_STAMP("people.repository", "findStamp"),
+        REPOSITORY_SEARCH("people.repository", "search"),
+        REPOSITORY_SAVE("people.repository", "save"),
+        REPOSITORY_BATCH_INSERT("people.repository", "batchInsert"),
+        REPOSITORY_UPDATE("people.repository", "update"),
+        REPOSITORY_DELETE("people.repository", "delete"),
+        REPOSITORY_FIND_CHANGED("people.repository", "findChangedAfter"),
+
+        CONVERSION_TO_DTO("people.conversion", "toPersonDTO"),
+        CONVERSION_TO_DTO_LIST("people.conversion", "toPersonDTOs"),
+        CONVERSION_TO_MODEL("people.conversion", "toPerson");
+
+        private final String metricName;
+        private final String method;
+
+        Operation(String metricName, String method) {
+            this.metricName = metricName;
+            this.method = method;
+        }
+    }
+
+    // таймеры лежат в массиве по порядковому номеру операции
+    private final Timer[] timers;
+
+    private final Counter validationFailures;
+
+    private final Counter notFound;
+
+    @Autowired
+    public PeopleMetrics(MeterRegistry meterRegistry) {
+        Operation[] operations = Operation.values();
+        timers = new Timer[operations.length];
+        for (Operation operation : operations) {
+            timers[operation.ordinal()] = Timer.builder(operation.metricName)
+                    .tag("method", operation.method)
+                    .publishPercentileHistogram()
+                    .register(meterRegistry);
+        }
+
+        validationFailures = Counter.builder("people.validation.failures")
+                .description("Persons rejected by validation")
+                .register(meterRegistry);
+        notFound = Counter.builder("people.not_found")
+                .description("Requests for persons that do not exist (PersonNotFoundException, 404)")
+                .register(meterRegistry);
+    }
+
+    // записывает время операции, startNanos - значение System.nanoTime() перед ее началом
+    public void record(Operation operation, long startNanos) {
+        timers[operation.ordinal()].record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void validationFailed() {
+        validationFailures.increment();
+    }
+
+    public void notFound() {
+        notFound.increment();
+    }
+}
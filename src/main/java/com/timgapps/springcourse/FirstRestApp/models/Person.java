@@ -1,5 +1,7 @@
 package com.timgapps.springcourse.FirstRestApp.models;
 
+import org.hibernate.annotations.DynamicUpdate;
+
 import javax.persistence.*;
 import javax.validation.constraints.Email;
 import javax.validation.constraints.Min;
@@ -9,6 +11,8 @@ import java.time.LocalDateTime;
 
 @Entity
 @Table(name = "Person")
+// в UPDATE попадают только изменившиеся колонки
+@DynamicUpdate
 public class Person {
 
     @Id
@@ -44,6 +48,11 @@ public class Person {
     @NotEmpty
     private String createdWho;
 
+    // версия строки, увеличивается при каждом изменении (оптимистическая блокировка)
+    @Version
+    @Column(name = "version")
+    private int version;
+
     public Person() {
     }
 
@@ -108,4 +117,12 @@ public class Person {
     public void setCreatedWho(String createdWho) {
         this.createdWho = createdWho;
     }
+
+    public int getVersion() {
+        return version;
+    }
+
+    public void setVersion(int version) {
+        this.version = version;
+    }
 }
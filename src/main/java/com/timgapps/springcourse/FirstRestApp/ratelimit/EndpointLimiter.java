@@ -0,0 +1,122 @@
+package com.timgapps.springcourse.FirstRestApp.ratelimit;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// лимиты одного endpoint'а (@RateLimited): token bucket на каждого клиента и ограничение одновременных запросов
+// блокировок нет: состояние клиента - одно число, которое меняется через CAS, клиенты разложены по
+// сегментам кэша Caffeine, поэтому разные клиенты друг другу не мешают
+class EndpointLimiter {
+
+    // текущие настройки, меняются целиком одной записью (см. update)
+    private static final class Settings {
+        private final RateLimitProperties.Limit limit;
+
+        // интервал между запросами в наносекундах (0 - без ограничения) и сколько интервалов можно "занять"
+        private final long interval;
+        private final long tolerance;
+
+        private Settings(RateLimitProperties.Limit limit) {
+            this.limit = new RateLimitProperties.Limit(limit.getRequestsPerSecond(), Math.max(1, limit.getBurst()),
+                    limit.getMaxConcurrent());
+            this.interval = limit.getRequestsPerSecond() > 0 ? (long) (1e9 / limit.getRequestsPerSecond()) : 0;
+            this.tolerance = interval * this.limit.getBurst();
+        }
+    }
+
+    private volatile Settings settings;
+
+    // клиент -> время (System.nanoTime), когда его "ведро" снова станет полным (алгоритм GCRA):
+    // запрос разрешен, если это время не дальше burst интервалов от текущего, и сдвигает его на один интервал
+    private final Cache<String, AtomicLong> buckets;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private final Counter rateRejected;
+    private final Counter concurrencyRejected;
+
+    EndpointLimiter(String name, RateLimitProperties.Limit limit, long maxClients, Duration clientIdleTimeout,
+                    MeterRegistry meterRegistry) {
+        this.settings = new Settings(limit);
+        this.buckets = Caffeine.newBuilder()
+                .maximumSize(maxClients)
+                .expireAfterAccess(clientIdleTimeout)
+                .build();
+
+        Gauge.builder("people.rate_limit.in_flight", inFlight, AtomicInteger::get)
+                .description("Requests currently executing under the limit")
+                .tag("endpoint", name)
+                .register(meterRegistry);
+        rateRejected = rejected(meterRegistry, name, "rate");
+        concurrencyRejected = rejected(meterRegistry, name, "concurrency");
+    }
+
+    private static Counter rejected(MeterRegistry meterRegistry, String name, String reason) {
+        return Counter.builder("people.rate_limit.rejected")
+                .description("Requests rejected with 429 Too Many Requests")
+                .tag("endpoint", name)
+                .tag("reason", reason)
+                .register(meterRegistry);
+    }
+
+    // 0 - запрос клиента разрешен, иначе через сколько наносекунд ему можно повторить запрос
+    long tryAcquire(String client) {
+        Settings current = settings;
+        if (current.interval == 0) {
+            return 0;
+        }
+        AtomicLong bucket = buckets.get(client, key -> new AtomicLong(Long.MIN_VALUE));
+        long now = System.nanoTime();
+        while (true) {
+            long fullAt = bucket.get();
+            long next = Math.max(fullAt, now) + current.interval;
+            long wait = next - now - current.tolerance;
+            if (wait > 0) {
+                rateRejected.increment();
+                return wait;
+            }
+            if (bucket.compareAndSet(fullAt, next)) {
+                return 0;
+            }
+        }
+    }
+
+    // занимает место среди одновременно выполняющихся запросов, false - мест нет
+    // в отличие от Semaphore, предел можно поменять на ходу
+    boolean tryEnter() {
+        int max = settings.limit.getMaxConcurrent();
+        while (true) {
+            int current = inFlight.get();
+            if (max > 0 && current >= max) {
+                concurrencyRejected.increment();
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    void exit() {
+        inFlight.decrementAndGet();
+    }
+
+    int getInFlight() {
+        return inFlight.get();
+    }
+
+    RateLimitProperties.Limit getLimit() {
+        return settings.limit;
+    }
+
+    void update(RateLimitProperties.Limit limit) {
+        settings = new Settings(limit);
+    }
+}
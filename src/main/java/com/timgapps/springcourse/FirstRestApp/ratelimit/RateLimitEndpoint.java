@@ -0,0 +1,27 @@
+package com.timgapps.springcourse.FirstRestApp.ratelimit;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// GET /actuator/ratelimits - текущие лимиты и сколько запросов выполняется под каждым
+// изменить лимит на ходу можно только через JMX (см. RateLimitJmxExtension)
+@Endpoint(id = "ratelimits")
+public class RateLimitEndpoint {
+
+    private final RateLimiters rateLimiters;
+
+    public RateLimitEndpoint(RateLimiters rateLimiters) {
+        this.rateLimiters = rateLimiters;
+    }
+
+    @ReadOperation
+    public Map<String, Object> limits() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("limits", rateLimiters.getLimits());
+        result.put("inFlight", rateLimiters.getInFlight());
+        return result;
+    }
+}
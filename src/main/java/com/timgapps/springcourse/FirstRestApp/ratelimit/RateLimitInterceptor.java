@@ -0,0 +1,94 @@
+package com.timgapps.springcourse.FirstRestApp.ratelimit;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.timgapps.springcourse.FirstRestApp.util.PersonErrorResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+// проверяет лимиты методов, помеченных @RateLimited, до вызова контроллера
+// превышен лимит частоты или одновременных запросов - ответ 429 с заголовком Retry-After
+public class RateLimitInterceptor implements AsyncHandlerInterceptor {
+
+    // место среди одновременных запросов, занятое этим запросом; для асинхронных запросов (потоковая выдача)
+    // место держится до конца асинхронной части, а при повторном dispatch лимиты не проверяются еще раз
+    private static final String PERMIT_ATTRIBUTE = RateLimitInterceptor.class.getName() + ".PERMIT";
+
+    private final RateLimiters rateLimiters;
+
+    private final ObjectMapper objectMapper;
+
+    private final String clientHeader;
+
+    private final Set<String> apiKeys;
+
+    public RateLimitInterceptor(RateLimiters rateLimiters, ObjectMapper objectMapper, String clientHeader,
+                                Set<String> apiKeys) {
+        this.rateLimiters = rateLimiters;
+        this.objectMapper = objectMapper;
+        this.clientHeader = clientHeader;
+        this.apiKeys = apiKeys;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler)
+            throws IOException {
+        if (!(handler instanceof HandlerMethod) || request.getAttribute(PERMIT_ATTRIBUTE) != null) {
+            return true;
+        }
+        RateLimited rateLimited = ((HandlerMethod) handler).getMethodAnnotation(RateLimited.class);
+        if (rateLimited == null) {
+            return true;
+        }
+        EndpointLimiter limiter = rateLimiters.get(rateLimited.value());
+        if (limiter == null) {
+            return true;
+        }
+
+        // сначала место среди одновременных запросов: запрос, отклоненный по нему, не расходует запас клиента
+        if (!limiter.tryEnter()) {
+            reject(response, 1, "Too many concurrent requests, retry later");
+            return false;
+        }
+        long wait = limiter.tryAcquire(clientKey(request));
+        if (wait > 0) {
+            limiter.exit();
+            reject(response, TimeUnit.NANOSECONDS.toSeconds(wait) + 1, "Too many requests, retry later");
+            return false;
+        }
+        request.setAttribute(PERMIT_ATTRIBUTE, limiter);
+        return true;
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler,
+                                Exception ex) {
+        EndpointLimiter limiter = (EndpointLimiter) request.getAttribute(PERMIT_ATTRIBUTE);
+        if (limiter != null) {
+            request.removeAttribute(PERMIT_ATTRIBUTE);
+            limiter.exit();
+        }
+    }
+
+    // неизвестный ключ не учитывается: иначе каждый новый ключ в заголовке давал бы новый запас запросов
+    private String clientKey(HttpServletRequest request) {
+        String apiKey = request.getHeader(clientHeader);
+        return apiKey != null && apiKeys.contains(apiKey) ? apiKey : request.getRemoteAddr();
+    }
+
+    private void reject(HttpServletResponse response, long retryAfterSeconds, String message) throws IOException {
+        response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+        response.setHeader(HttpHeaders.RETRY_AFTER, Long.toString(retryAfterSeconds));
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        objectMapper.writeValue(response.getOutputStream(),
+                new PersonErrorResponse(message, System.currentTimeMillis()));
+    }
+}
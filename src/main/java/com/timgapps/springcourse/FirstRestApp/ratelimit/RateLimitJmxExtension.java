@@ -0,0 +1,29 @@
+package com.timgapps.springcourse.FirstRestApp.ratelimit;
+
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.boot.actuate.endpoint.jmx.annotation.EndpointJmxExtension;
+import org.springframework.lang.Nullable;
+
+// изменение лимитов на ходу только через JMX (spring.jmx.enabled=true): /actuator/ratelimits открыт
+// по HTTP без авторизации и там только показывает лимиты; не переданные поля остаются прежними
+@EndpointJmxExtension(endpoint = RateLimitEndpoint.class)
+public class RateLimitJmxExtension {
+
+    private final RateLimiters rateLimiters;
+
+    public RateLimitJmxExtension(RateLimiters rateLimiters) {
+        this.rateLimiters = rateLimiters;
+    }
+
+    @WriteOperation
+    public RateLimitProperties.Limit configure(@Selector String name, @Nullable Double requestsPerSecond,
+                                               @Nullable Integer burst, @Nullable Integer maxConcurrent) {
+        RateLimitProperties.Limit current = rateLimiters.getLimits()
+                .getOrDefault(name, new RateLimitProperties.Limit());
+        return rateLimiters.configure(name, new RateLimitProperties.Limit(
+                requestsPerSecond != null ? requestsPerSecond : current.getRequestsPerSecond(),
+                burst != null ? burst : current.getBurst(),
+                maxConcurrent != null ? maxConcurrent : current.getMaxConcurrent()));
+    }
+}
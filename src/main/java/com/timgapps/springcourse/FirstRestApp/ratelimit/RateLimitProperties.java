@@ -0,0 +1,126 @@
+package com.timgapps.springcourse.FirstRestApp.ratelimit;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+// настройки ограничения запросов, префикс people.rate-limit
+// лимиты отдельных endpoint'ов можно менять на ходу через /actuator/ratelimits
+@ConfigurationProperties(prefix = "people.rate-limit")
+public class RateLimitProperties {
+
+    private boolean enabled = true;
+
+    // заголовок с ключом клиента; клиент определяется по ключу, только если ключ есть в apiKeys,
+    // иначе (нет заголовка или неизвестный ключ) - по IP
+    private String clientHeader = "X-API-Key";
+
+    // известные ключи клиентов; ключ не проверяется приложением, и со случайным ключом на каждый запрос
+    // клиент получал бы новый запас запросов
+    private Set<String> apiKeys = new LinkedHashSet<>();
+
+    // сколько клиентов помнит каждый лимит и через сколько забывает неактивного
+    // (забытый клиент начинает с полного запаса запросов, как и неактивный)
+    private long maxClients = 100_000;
+    private Duration clientIdleTimeout = Duration.ofMinutes(10);
+
+    // имя лимита (@RateLimited) -> лимит, метод без настроенного лимита не ограничивается
+    private Map<String, Limit> endpoints = new LinkedHashMap<>();
+
+    public static class Limit {
+
+        // сколько запросов в секунду в среднем разрешено одному клиенту (0 - без ограничения)
+        private double requestsPerSecond;
+
+        // сколько запросов клиент может сделать подряд после паузы
+        private int burst = 1;
+
+        // сколько запросов всех клиентов могут выполняться одновременно (0 - без ограничения)
+        private int maxConcurrent;
+
+        public Limit() {
+        }
+
+        public Limit(double requestsPerSecond, int burst, int maxConcurrent) {
+            this.requestsPerSecond = requestsPerSecond;
+            this.burst = burst;
+            this.maxConcurrent = maxConcurrent;
+        }
+
+        public double getRequestsPerSecond() {
+            return requestsPerSecond;
+        }
+
+        public void setRequestsPerSecond(double requestsPerSecond) {
+            this.requestsPerSecond = requestsPerSecond;
+        }
+
+        public int getBurst() {
+            return burst;
+        }
+
+        public void setBurst(int burst) {
+            this.burst = burst;
+        }
+
+        public int getMaxConcurrent() {
+            return maxConcurrent;
+        }
+
+        public void setMaxConcurrent(int maxConcurrent) {
+            this.maxConcurrent = maxConcurrent;
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public String getClientHeader() {
+        return clientHeader;
+    }
+
+    public void setClientHeader(String clientHeader) {
+        this.clientHeader = clientHeader;
+    }
+
+    public Set<String> getApiKeys() {
+        return apiKeys;
+    }
+
+    public void setApiKeys(Set<String> apiKeys) {
+        this.apiKeys = apiKeys;
+    }
+
+    public long getMaxClients() {
+        return maxClients;
+    }
+
+    public void setMaxClients(long maxClients) {
+        this.maxClients = maxClients;
+    }
+
+    public Duration getClientIdleTimeout() {
+        return clientIdleTimeout;
+    }
+
+    public void setClientIdleTimeout(Duration clientIdleTimeout) {
+        this.clientIdleTimeout = clientIdleTimeout;
+    }
+
+    public Map<String, Limit> getEndpoints() {
+        return endpoints;
+    }
+
+    public void setEndpoints(Map<String, Limit> endpoints) {
+        this.endpoints = endpoints;
+    }
+}
@@ -0,0 +1,17 @@
+package com.timgapps.springcourse.FirstRestApp.ratelimit;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+// метод контроллера ограничивается лимитами people.rate-limit.endpoints.<value>:
+// частота запросов от одного клиента и число одновременно выполняющихся запросов
+// (см. RateLimitInterceptor)
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface RateLimited {
+
+    // имя лимита, у нескольких методов может быть один лимит
+    String value();
+}
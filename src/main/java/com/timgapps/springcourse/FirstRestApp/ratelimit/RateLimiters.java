@@ -0,0 +1,48 @@
+package com.timgapps.springcourse.FirstRestApp.ratelimit;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// лимиты всех endpoint'ов по имени из @RateLimited
+public class RateLimiters {
+
+    private final RateLimitProperties properties;
+
+    private final MeterRegistry meterRegistry;
+
+    private final Map<String, EndpointLimiter> limiters = new ConcurrentHashMap<>();
+
+    public RateLimiters(RateLimitProperties properties, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.meterRegistry = meterRegistry;
+        properties.getEndpoints().forEach(this::configure);
+    }
+
+    // null - для этого имени лимит не настроен
+    EndpointLimiter get(String name) {
+        return limiters.get(name);
+    }
+
+    // меняет лимит на ходу (или добавляет новый), состояние клиентов и текущие запросы сохраняются
+    public RateLimitProperties.Limit configure(String name, RateLimitProperties.Limit limit) {
+        EndpointLimiter limiter = limiters.computeIfAbsent(name, key -> new EndpointLimiter(key, limit,
+                properties.getMaxClients(), properties.getClientIdleTimeout(), meterRegistry));
+        limiter.update(limit);
+        return limiter.getLimit();
+    }
+
+    public Map<String, RateLimitProperties.Limit> getLimits() {
+        Map<String, RateLimitProperties.Limit> limits = new LinkedHashMap<>();
+        limiters.forEach((name, limiter) -> limits.put(name, limiter.getLimit()));
+        return limits;
+    }
+
+    public Map<String, Integer> getInFlight() {
+        Map<String, Integer> inFlight = new LinkedHashMap<>();
+        limiters.forEach((name, limiter) -> inFlight.put(name, limiter.getInFlight()));
+        return inFlight;
+    }
+}
@@ -1,11 +1,53 @@
 package com.timgapps.springcourse.FirstRestApp.repositories;
 
 import com.timgapps.springcourse.FirstRestApp.models.Person;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import javax.persistence.QueryHint;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.stream.Stream;
+
 // репозиторий, который нам дает доступ к базе данных, работает с базой данных
 @Repository
-public interface PeopleRepository extends JpaRepository<Person, Integer> {
+public interface PeopleRepository extends JpaRepository<Person, Integer>, JpaSpecificationExecutor<Person>,
+        PeopleRepositoryCustom {
+
+    // keyset-пагинация: берем следующую "страницу" людей после последнего увиденного id,
+    // база идет по индексу первичного ключа и не пропускает строки как при OFFSET
+    List<Person> findByIdGreaterThanOrderByIdAsc(int id, Pageable pageable);
+
+    // потоковое чтение всей таблицы: драйвер забирает строки порциями по fetch size,
+    // а не загружает весь результат в память (работает только внутри транзакции)
+    @QueryHints(@QueryHint(name = org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE, value = "500"))
+    Stream<Person> streamAllByOrderByIdAsc();
+
+    // люди, измененные после (updatedAt, id), в порядке изменения - для подписчиков GET /people/changes,
+    // которых нет в буфере событий; идет по индексу person_updated_at_idx
+    @Query("select p from Person p where p.updatedAt > :updatedAt or (p.updatedAt = :updatedAt and p.id > :id) " +
+            "order by p.updatedAt, p.id")
+    List<Person> findChangedAfter(@Param("updatedAt") LocalDateTime updatedAt, @Param("id") int id,
+                                  Pageable pageable);
+
+    // одна агрегатная строка вместо чтения всей таблицы
+    @Query("select count(p) as count, max(p.updatedAt) as lastUpdated from Person p")
+    PeopleStamp findStamp();
+
+    // удаление одним DELETE, без предварительного SELECT, который делает deleteById
+    // возвращает количество удаленных строк (0 - человека нет)
+    @Modifying
+    @Query("delete from Person p where p.id = :id")
+    int deleteReturningCount(@Param("id") int id);
 
+    // то же, но только если человек не менялся с версии version
+    @Modifying
+    @Query("delete from Person p where p.id = :id and p.version = :version")
+    int deleteByIdAndVersion(@Param("id") int id, @Param("version") int version);
 }
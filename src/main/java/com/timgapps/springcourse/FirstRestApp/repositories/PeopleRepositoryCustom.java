@@ -0,0 +1,21 @@
+package com.timgapps.springcourse.FirstRestApp.repositories;
+
+import com.timgapps.springcourse.FirstRestApp.models.Person;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+// методы репозитория, которые Spring Data не умеет генерировать сам (реализация в PeopleRepositoryCustomImpl)
+public interface PeopleRepositoryCustom {
+
+    // поиск по условиям с сортировкой и ограничением выборки, но без дополнительного запроса count(*),
+    // который делает findAll(Specification, Pageable)
+    List<Person> search(Specification<Person> specification, Sort sort, int offset, int limit);
+
+    // изменение человека одним UPDATE без предварительного SELECT: меняются только переданные (не null) поля,
+    // updated_at и версия, и только если версия в базе равна version
+    // возвращает количество измененных строк (0 - человека нет или его версия другая)
+    int update(int id, int version, String name, Integer age, String email, LocalDateTime updatedAt);
+}
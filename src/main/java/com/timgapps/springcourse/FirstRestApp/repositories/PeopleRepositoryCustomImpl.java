@@ -0,0 +1,65 @@
+package com.timgapps.springcourse.FirstRestApp.repositories;
+
+import com.timgapps.springcourse.FirstRestApp.models.Person;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.CriteriaUpdate;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.springframework.data.jpa.repository.query.QueryUtils.toOrders;
+
+public class PeopleRepositoryCustomImpl implements PeopleRepositoryCustom {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public List<Person> search(Specification<Person> specification, Sort sort, int offset, int limit) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Person> query = cb.createQuery(Person.class);
+        Root<Person> root = query.from(Person.class);
+
+        if (specification != null) {
+            Predicate predicate = specification.toPredicate(root, query, cb);
+            if (predicate != null) {
+                query.where(predicate);
+            }
+        }
+        query.orderBy(toOrders(sort, root, cb));
+
+        return entityManager.createQuery(query)
+                .setFirstResult(offset)
+                .setMaxResults(limit)
+                .getResultList();
+    }
+
+    @Override
+    public int update(int id, int version, String name, Integer age, String email, LocalDateTime updatedAt) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaUpdate<Person> update = cb.createCriteriaUpdate(Person.class);
+        Root<Person> root = update.from(Person.class);
+
+        if (name != null) {
+            update.set(root.<String>get("name"), name);
+        }
+        if (age != null) {
+            update.set(root.<Integer>get("age"), age);
+        }
+        if (email != null) {
+            update.set(root.<String>get("email"), email);
+        }
+        update.set(root.<LocalDateTime>get("updatedAt"), updatedAt);
+        update.set(root.<Integer>get("version"), version + 1);
+        update.where(cb.equal(root.get("id"), id), cb.equal(root.get("version"), version));
+
+        return entityManager.createQuery(update).executeUpdate();
+    }
+}
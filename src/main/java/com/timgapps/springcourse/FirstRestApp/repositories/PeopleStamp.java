@@ -0,0 +1,12 @@
+package com.timgapps.springcourse.FirstRestApp.repositories;
+
+import java.time.LocalDateTime;
+
+// "версия" всей таблицы людей: количество строк и время последнего изменения
+// по ней строится ETag для списка людей без загрузки самих людей
+public interface PeopleStamp {
+
+    long getCount();
+
+    LocalDateTime getLastUpdated();
+}
@@ -0,0 +1,56 @@
+package com.timgapps.springcourse.FirstRestApp.repositories;
+
+import com.timgapps.springcourse.FirstRestApp.models.Person;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.time.LocalDateTime;
+
+// условия поиска людей для GET /people/search
+// каждое условие опирается на свой индекс (см. миграцию V2__person_search_indexes.sql),
+// если параметр не задан - условие не добавляется (null Specification игнорируется при and())
+public final class PersonSpecifications {
+
+    private PersonSpecifications() {
+    }
+
+    // имя начинается с prefix (LIKE 'prefix%' может идти по индексу, в отличие от '%prefix%')
+    public static Specification<Person> nameStartsWith(String prefix) {
+        if (prefix == null || prefix.isEmpty()) {
+            return null;
+        }
+        return (root, query, cb) -> cb.like(root.get("name"), escapeLike(prefix) + "%", '\\');
+    }
+
+    public static Specification<Person> emailEquals(String email) {
+        if (email == null || email.isEmpty()) {
+            return null;
+        }
+        return (root, query, cb) -> cb.equal(root.get("email"), email);
+    }
+
+    public static Specification<Person> ageBetween(Integer minAge, Integer maxAge) {
+        if (minAge == null && maxAge == null) {
+            return null;
+        }
+        if (maxAge == null) {
+            return (root, query, cb) -> cb.greaterThanOrEqualTo(root.get("age"), minAge);
+        }
+        if (minAge == null) {
+            return (root, query, cb) -> cb.lessThanOrEqualTo(root.get("age"), maxAge);
+        }
+        return (root, query, cb) -> cb.between(root.get("age"), minAge, maxAge);
+    }
+
+    // created_at в диапазоне [from, to)
+    public static Specification<Person> createdBetween(LocalDateTime from, LocalDateTime to) {
+        Specification<Person> fromSpec = from == null ? null
+                : (root, query, cb) -> cb.greaterThanOrEqualTo(root.get("created_at"), from);
+        Specification<Person> toSpec = to == null ? null
+                : (root, query, cb) -> cb.lessThan(root.get("created_at"), to);
+        return Specification.where(fromSpec).and(toSpec);
+    }
+
+    private static String escapeLike(String value) {
+        return value.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+}
@@ -1,51 +1,406 @@
 package com.timgapps.springcourse.FirstRestApp.services;
 
+import com.timgapps.springcourse.FirstRestApp.metrics.PeopleMetrics;
 import com.timgapps.springcourse.FirstRestApp.models.Person;
 import com.timgapps.springcourse.FirstRestApp.repositories.PeopleRepository;
+import com.timgapps.springcourse.FirstRestApp.repositories.PeopleStamp;
+import com.timgapps.springcourse.FirstRestApp.util.PeopleStatsResponse;
+import com.timgapps.springcourse.FirstRestApp.util.PersonEmailConflictException;
 import com.timgapps.springcourse.FirstRestApp.util.PersonNotFoundException;
+import com.timgapps.springcourse.FirstRestApp.util.PersonVersionConflictException;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 
+import javax.persistence.EntityManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
 import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import static com.timgapps.springcourse.FirstRestApp.config.ReplicaRoutingDataSource.readFromPrimary;
+import static com.timgapps.springcourse.FirstRestApp.metrics.PeopleMetrics.Operation.*;
+import static com.timgapps.springcourse.FirstRestApp.services.TransactionCallbacks.afterCommit;
 
 @Service
 public class PeopleService {
 
+    // вставка идет мимо Hibernate: при GenerationType.IDENTITY он не умеет группировать INSERT'ы,
+    // а человек с уже занятым email отбрасывается самим INSERT (уникальный индекс person_email_key),
+    // без отдельного SELECT перед вставкой
+    private static final String INSERT_PERSON_SQL = "INSERT INTO Person (name, age, email, created_at, " +
+            "updated_at, created_who) VALUES (?, ?, ?, ?, ?, ?) ON CONFLICT DO NOTHING";
+
+    // возраст и дата создания до изменения - для агрегатов PeopleStats; строка блокируется до конца транзакции,
+    // чтобы между чтением и UPDATE/DELETE ее не изменила другая транзакция
+    private static final String LOCK_PERSON_SQL = "SELECT age, created_at FROM Person WHERE id = ? FOR UPDATE";
+
+    private static final String UNIQUE_VIOLATION = "23505";
+
     private final PeopleRepository peopleRepository;
 
+    private final EntityManager entityManager;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final PersonCache personCache;
+
+    private final PeopleMetrics peopleMetrics;
+
+    private final PeopleStats peopleStats;
+
+    private final PersonChangeFeed changeFeed;
+
+    private final PersonEnricher personEnricher;
+
+    // загрузка человека и "версии" таблицы из базы при промахе кэша
+    // ссылки на методы создаются один раз, а не на каждый вызов
+    private final IntFunction<Optional<Person>> personLoader = this::loadPerson;
+    private final Supplier<PeopleStamp> stampLoader = this::loadStamp;
+
     @Autowired
-    public PeopleService(PeopleRepository peopleRepository) {
+    public PeopleService(PeopleRepository peopleRepository, EntityManager entityManager,
+                         JdbcTemplate jdbcTemplate, PersonCache personCache, PeopleMetrics peopleMetrics,
+                         PeopleStats peopleStats, PersonChangeFeed changeFeed, PersonEnricher personEnricher) {
         this.peopleRepository = peopleRepository;
+        this.entityManager = entityManager;
+        this.jdbcTemplate = jdbcTemplate;
+        this.personCache = personCache;
+        this.peopleMetrics = peopleMetrics;
+        this.peopleStats = peopleStats;
+        this.changeFeed = changeFeed;
+        this.personEnricher = personEnricher;
     }
 
+    // время каждого метода сервиса и каждого обращения к репозиторию пишется в метрики
+    // people.service и people.repository (см. PeopleMetrics)
+    // читающие методы помечены readOnly: при people.datasource.routing.enabled=true они идут в реплику
+    @Transactional(readOnly = true)
     public List<Person> findAll() {
-        return peopleRepository.findAll();
+        long start = System.nanoTime();
+        try {
+            List<Person> people = peopleRepository.findAll();
+            peopleMetrics.record(REPOSITORY_FIND_ALL, start);
+            return people;
+        } finally {
+            peopleMetrics.record(SERVICE_FIND_ALL, start);
+        }
+    }
+
+    // возвращает не больше limit человек, у которых id больше after (курсор - последний id предыдущей страницы)
+    @Transactional(readOnly = true)
+    public List<Person> findPage(int after, int limit) {
+        long start = System.nanoTime();
+        try {
+            List<Person> people = peopleRepository.findByIdGreaterThanOrderByIdAsc(after, PageRequest.of(0, limit));
+            peopleMetrics.record(REPOSITORY_FIND_PAGE, start);
+            return people;
+        } finally {
+            peopleMetrics.record(SERVICE_FIND_PAGE, start);
+        }
+    }
+
+    // поиск людей по условиям, offset/limit ограничивают выборку
+    @Transactional(readOnly = true)
+    public List<Person> search(Specification<Person> specification, Sort sort, int offset, int limit) {
+        long start = System.nanoTime();
+        try {
+            List<Person> people = peopleRepository.search(specification, sort, offset, limit);
+            peopleMetrics.record(REPOSITORY_SEARCH, start);
+            return people;
+        } finally {
+            peopleMetrics.record(SERVICE_SEARCH, start);
+        }
+    }
+
+    // передает всех людей по одному в action, не собирая их в список
+    // после обработки сущность отсоединяем от persistence context, иначе Hibernate будет держать
+    // ссылки на все прочитанные объекты до конца транзакции и память будет расти вместе с таблицей
+    @Transactional(readOnly = true)
+    public void forEachPerson(Consumer<Person> action) {
+        try (Stream<Person> people = peopleRepository.streamAllByOrderByIdAsc()) {
+            people.forEach(person -> {
+                action.accept(person);
+                entityManager.detach(person);
+            });
+        }
+    }
+
+    // количество людей и время последнего изменения, используется для ETag списка
+    public PeopleStamp findStamp() {
+        long start = System.nanoTime();
+        try {
+            return personCache.getStamp(stampLoader);
+        } finally {
+            peopleMetrics.record(SERVICE_FIND_STAMP, start);
+        }
+    }
+
+    // агрегаты по людям из памяти, без обращения к базе (см. PeopleStats)
+    public PeopleStatsResponse getStats() {
+        return peopleStats.snapshot();
+    }
+
+    // поток изменений людей начиная со смещения lastEventId (см. PersonChangeFeed)
+    public SseEmitter subscribeToChanges(String lastEventId) {
+        return changeFeed.subscribe(lastEventId);
     }
 
     public Person findOne(int id) {
-        Optional<Person> foundPerson = peopleRepository.findById(id);
+        long start = System.nanoTime();
+        try {
+            // сначала смотрим в кэш, в базу идем только при промахе
+            Optional<Person> foundPerson = personCache.get(id, personLoader);
 //        return foundPerson.orElse(null);
-        return foundPerson.orElseThrow(PersonNotFoundException::new);
+            return foundPerson.orElseThrow(PersonNotFoundException::new);
+        } finally {
+            peopleMetrics.record(SERVICE_FIND_ONE, start);
+        }
+    }
+
+    // findOne и findStamp не открывают транзакцию сами, чтобы попадание в кэш ее не требовало,
+    // findById и findStamp репозитория и так выполняются в readOnly транзакции (как все методы SimpleJpaRepository)
+    // загруженное остается в кэше надолго, поэтому читается из основной базы, а не из реплики: иначе после
+    // записи и ее evict чтение другого клиента вернуло бы в кэш старую строку из отстающей реплики
+    private Optional<Person> loadPerson(int id) {
+        long start = System.nanoTime();
+        try {
+            return readFromPrimary(() -> peopleRepository.findById(id));
+        } finally {
+            peopleMetrics.record(REPOSITORY_FIND_BY_ID, start);
+        }
+    }
+
+    private PeopleStamp loadStamp() {
+        long start = System.nanoTime();
+        try {
+            return readFromPrimary(peopleRepository::findStamp);
+        } finally {
+            peopleMetrics.record(REPOSITORY_FIND_STAMP, start);
+        }
     }
 
     // метод будет принимать объект класса Person из контроллера от клиента и будет сохранять его в базу данных
+    // человек с уже занятым email не сохраняется - PersonEmailConflictException
     @Transactional
     public void save(Person person) {
-        enrichPerson(person);
+        long start = System.nanoTime();
+        try {
+            personEnricher.enrich(person);
+
+            long repositoryStart = System.nanoTime();
+            List<Person> conflicts = insert(List.of(person));
+            peopleMetrics.record(REPOSITORY_SAVE, repositoryStart);
+            if (!conflicts.isEmpty()) {
+                throw new PersonEmailConflictException();
+            }
+
+            evict(person.getId());
+            peopleStats.created(person);
+            changeFeed.created(person);
+        } finally {
+            peopleMetrics.record(SERVICE_SAVE, start);
+        }
+    }
+
+    // сохраняет сразу несколько человек одним JDBC batch'ем в одной транзакции
+    // сгенерированные базой id проставляются в переданные объекты
+    // возвращает людей, которые не сохранены, потому что их email уже занят (в базе или раньше в этом же списке)
+    @Transactional
+    public List<Person> saveAll(List<Person> people) {
+        if (people.isEmpty()) {
+            return List.of();
+        }
+        long start = System.nanoTime();
+        try {
+            people.forEach(personEnricher::enrich);
+
+            long repositoryStart = System.nanoTime();
+            List<Person> conflicts = insert(people);
+            peopleMetrics.record(REPOSITORY_BATCH_INSERT, repositoryStart);
+
+            List<Person> saved = people;
+            if (!conflicts.isEmpty()) {
+                saved = new ArrayList<>(people);
+                saved.removeAll(conflicts);
+            }
+            for (Person person : saved) {
+                evict(person.getId());
+            }
+            peopleStats.createdAll(saved);
+            changeFeed.createdAll(saved);
+            return conflicts;
+        } finally {
+            peopleMetrics.record(SERVICE_SAVE_ALL, start);
+        }
+    }
+
+    // изменяет переданные (не null) поля человека, если его версия в базе все еще равна version
+    // один UPDATE без чтения человека (при смене возраста перед ним блокируется строка, см. lock);
+    // новая версия - version + 1, возвращается время изменения
+    // человека нет - PersonNotFoundException, версия другая - PersonVersionConflictException,
+    // email занят другим человеком - PersonEmailConflictException
+    @Transactional
+    public LocalDateTime update(int id, int version, String name, Integer age, String email) {
+        long start = System.nanoTime();
+        try {
+            // с точностью колонки updated_at: смещение в ленте изменений совпадает с тем, что потом прочитается из базы
+            LocalDateTime updatedAt = LocalDateTime.now().truncatedTo(ChronoUnit.MICROS);
+
+            long repositoryStart = System.nanoTime();
+            // возраст до изменения нужен только если меняется возраст
+            Person old = age == null ? null : lock(id);
+            int updated;
+            try {
+                updated = peopleRepository.update(id, version, name, age, email, updatedAt);
+            } catch (DataIntegrityViolationException e) {
+                if (isUniqueViolation(e)) {
+                    throw new PersonEmailConflictException();
+                }
+                throw e;
+            } finally {
+                peopleMetrics.record(REPOSITORY_UPDATE, repositoryStart);
+            }
 
-        peopleRepository.save(person);
+            evict(id);
+            if (updated == 0) {
+                throw notFoundOrConflict(id);
+            }
+            if (old != null) {
+                peopleStats.updated(old.getAge(), age);
+            } else if (age != null) {
+                peopleStats.changedUnknown();
+            }
+            changeFeed.updated(id, version + 1, updatedAt);
+            return updatedAt;
+        } finally {
+            peopleMetrics.record(SERVICE_UPDATE, start);
+        }
     }
 
-    // обогащаем объект с помощью метода
-    private void enrichPerson(Person person) {
+    // удаляет человека одним DELETE после блокировки строки (см. lock);
+    // если передана версия - только если человек с тех пор не менялся
+    @Transactional
+    public void delete(int id, Integer version) {
+        long start = System.nanoTime();
+        try {
+            long repositoryStart = System.nanoTime();
+            Person old = lock(id);
+            int deleted = version == null
+                    ? peopleRepository.deleteReturningCount(id)
+                    : peopleRepository.deleteByIdAndVersion(id, version);
+            peopleMetrics.record(REPOSITORY_DELETE, repositoryStart);
+
+            evict(id);
+            if (deleted == 0) {
+                throw version == null ? new PersonNotFoundException() : notFoundOrConflict(id);
+            }
+            if (old != null) {
+                peopleStats.deleted(old.getAge(), old.getCreated_at());
+            } else {
+                peopleStats.changedUnknown();
+            }
+            changeFeed.deleted(id);
+        } finally {
+            peopleMetrics.record(SERVICE_DELETE, start);
+        }
+    }
+
+    // убирает человека из кэша сразу и еще раз после коммита: GET /people/{id} из другого потока,
+    // пришедший до коммита, прочитает из базы старую строку (или "нет такого") и положит ее в кэш
+    private void evict(int id) {
+        personCache.evict(id);
+        afterCommit(() -> personCache.evict(id));
+    }
+
+    // блокирует строку человека и возвращает его возраст и дату создания (остальные поля не заполнены),
+    // null - человека нет
+    private Person lock(int id) {
+        return jdbcTemplate.query(LOCK_PERSON_SQL, resultSet -> {
+            if (!resultSet.next()) {
+                return null;
+            }
+            Person person = new Person();
+            person.setAge(resultSet.getInt(1));
+            Timestamp createdAt = resultSet.getTimestamp(2);
+            person.setCreatedAt(createdAt == null ? null : createdAt.toLocalDateTime());
+            return person;
+        }, id);
+    }
+
+    // строка не изменилась: лишний запрос к базе делается только в этом случае, чтобы отличить 404 от 409
+    private RuntimeException notFoundOrConflict(int id) {
+        return peopleRepository.existsById(id) ? new PersonVersionConflictException() : new PersonNotFoundException();
+    }
+
+    // нарушен уникальный индекс (SQLState 23505 и в PostgreSQL, и в H2); у Person он один - person_email_key
+    private static boolean isUniqueViolation(DataIntegrityViolationException e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof SQLException && UNIQUE_VIOLATION.equals(((SQLException) cause).getSQLState())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // вставляет людей одним batch'ем и возвращает тех, кого база отбросила из-за занятого email
+    // INSERT возвращает id и email только вставленных строк, по email id и находят своего человека
+    private List<Person> insert(List<Person> people) {
+        return jdbcTemplate.execute((ConnectionCallback<List<Person>>) connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(INSERT_PERSON_SQL,
+                    new String[]{"id", "email"})) {
+                for (Person person : people) {
+                    statement.setString(1, person.getName());
+                    statement.setInt(2, person.getAge());
+                    statement.setString(3, person.getEmail());
+                    statement.setTimestamp(4, Timestamp.valueOf(person.getCreated_at()));
+                    statement.setTimestamp(5, Timestamp.valueOf(person.getUpdatedAt()));
+                    statement.setString(6, person.getCreatedWho());
+                    statement.addBatch();
+                }
+                statement.executeBatch();
+
+                Map<String, Integer> ids = new HashMap<>();
+                try (ResultSet keys = statement.getGeneratedKeys()) {
+                    while (keys.next()) {
+                        ids.put(keys.getString(2), keys.getInt(1));
+                    }
+                }
 
-        // на самом сервере добавляются поля
-        person.setCreatedAt(LocalDateTime.now());
-        person.setUpdatedAt(LocalDateTime.now());
-        person.setCreatedWho("ADMIN");
+                List<Person> conflicts = List.of();
+                for (Person person : people) {
+                    // remove: второй человек с тем же email в этом же списке тоже конфликт
+                    Integer id = ids.remove(person.getEmail());
+                    if (id != null) {
+                        person.setId(id);
+                    } else {
+                        if (conflicts.isEmpty()) {
+                            conflicts = new ArrayList<>();
+                        }
+                        conflicts.add(person);
+                    }
+                }
+                return conflicts;
+            }
+        });
     }
 }
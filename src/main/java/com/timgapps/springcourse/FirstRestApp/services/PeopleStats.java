@@ -0,0 +1,253 @@
+package com.timgapps.springcourse.FirstRestApp.services;
+
+import com.timgapps.springcourse.FirstRestApp.models.Person;
+import com.timgapps.springcourse.FirstRestApp.util.PeopleStatsResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.timgapps.springcourse.FirstRestApp.services.TransactionCallbacks.afterCommit;
+
+// агрегаты по людям для GET /people/stats без чтения таблицы на каждый запрос:
+// количество, распределение по возрасту (по 10 лет) и количество созданных по дням за последние people.stats.days дней
+// значение = результат последней сверки с базой (GROUP BY) + изменения, записанные с тех пор
+// создание, смена возраста и удаление учитываются сразу после коммита; старые возраст и дату создания
+// PeopleService читает в той же транзакции, что и запись
+@Component
+public class PeopleStats {
+
+    private static final Logger log = LoggerFactory.getLogger(PeopleStats.class);
+
+    private static final int AGE_BUCKET_WIDTH = 10;
+    // 0-9, 10-19, ..., 90-99, 100+
+    private static final int AGE_BUCKETS = 11;
+
+    // то же, что ageBucket: номер корзины всегда в границах массива, даже если CHECK (age >= 0) снимут со схемы
+    private static final String AGE_BUCKET_SQL = "GREATEST(0, LEAST(age / " + AGE_BUCKET_WIDTH + ", " +
+            (AGE_BUCKETS - 1) + "))";
+
+    private static final String COUNT_BY_AGE_SQL = "SELECT " + AGE_BUCKET_SQL + " AS bucket, COUNT(*) " +
+            "FROM Person GROUP BY " + AGE_BUCKET_SQL;
+
+    private static final String COUNT_BY_DAY_SQL = "SELECT CAST(created_at AS DATE) AS created_day, COUNT(*) " +
+            "FROM Person WHERE created_at >= ? GROUP BY CAST(created_at AS DATE)";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final int days;
+
+    private final long reconcileIntervalNanos;
+
+    private final long dirtyDelayNanos;
+
+    private volatile State state = new State(new Reconciled(0, new long[AGE_BUCKETS], Map.of(), null));
+
+    // агрегаты разошлись с базой так, что изменениями это не исправить (старые значения неизвестны)
+    // внеочередная сверка - не раньше чем через people.stats.dirty-delay
+    private volatile boolean dirty;
+
+    private volatile long lastReconcileNanos;
+
+    private final ScheduledExecutorService reconciler;
+
+    @Autowired
+    public PeopleStats(JdbcTemplate jdbcTemplate,
+                       @Value("${people.stats.days:30}") int days,
+                       @Value("${people.stats.reconcile-interval:5m}") Duration reconcileInterval,
+                       @Value("${people.stats.dirty-delay:5s}") Duration dirtyDelay) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.days = days;
+        this.reconcileIntervalNanos = reconcileInterval.toNanos();
+        this.dirtyDelayNanos = dirtyDelay.toNanos();
+        this.reconciler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "people-stats-reconciler");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // первая сверка - сразу, в фоне, чтобы не задерживать старт приложения
+    @PostConstruct
+    public void start() {
+        reconciler.scheduleWithFixedDelay(this::reconcileIfNeeded, 0, dirtyDelayNanos, TimeUnit.NANOSECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        reconciler.shutdownNow();
+    }
+
+    public void created(Person person) {
+        afterCommit(() -> state.changes.add(person));
+    }
+
+    public void createdAll(List<Person> people) {
+        afterCommit(() -> {
+            Changes changes = state.changes;
+            for (Person person : people) {
+                changes.add(person);
+            }
+        });
+    }
+
+    // изменение имени и email на агрегаты не влияет
+    public void updated(int oldAge, Integer newAge) {
+        if (newAge != null && ageBucket(oldAge) != ageBucket(newAge)) {
+            afterCommit(() -> {
+                Changes changes = state.changes;
+                changes.ages[ageBucket(oldAge)].decrement();
+                changes.ages[ageBucket(newAge)].increment();
+            });
+        }
+    }
+
+    public void deleted(int age, LocalDateTime createdAt) {
+        afterCommit(() -> state.changes.remove(age, createdAt));
+    }
+
+    // строка изменилась, но ее прежние значения неизвестны
+    public void changedUnknown() {
+        afterCommit(() -> dirty = true);
+    }
+
+    // время ответа не зависит от размера таблицы: несколько корзин возраста и people.stats.days дней
+    public PeopleStatsResponse snapshot() {
+        State current = state;
+        Reconciled reconciled = current.reconciled;
+        Changes changes = current.changes;
+
+        List<PeopleStatsResponse.AgeBucket> ages = new ArrayList<>(AGE_BUCKETS);
+        for (int i = 0; i < AGE_BUCKETS; i++) {
+            int from = i * AGE_BUCKET_WIDTH;
+            Integer to = i == AGE_BUCKETS - 1 ? null : from + AGE_BUCKET_WIDTH - 1;
+            ages.add(new PeopleStatsResponse.AgeBucket(from, to, reconciled.ages[i] + changes.ages[i].sum()));
+        }
+
+        LocalDate today = LocalDate.now();
+        List<PeopleStatsResponse.DayCount> createdPerDay = new ArrayList<>(days);
+        for (LocalDate day = today.minusDays(days - 1); !day.isAfter(today); day = day.plusDays(1)) {
+            LongAdder created = changes.days.get(day);
+            long count = reconciled.days.getOrDefault(day, 0L) + (created == null ? 0 : created.sum());
+            createdPerDay.add(new PeopleStatsResponse.DayCount(day, count));
+        }
+
+        return new PeopleStatsResponse(reconciled.total + changes.total.sum(), ages, createdPerDay,
+                reconciled.at);
+    }
+
+    private void reconcileIfNeeded() {
+        long sinceLast = System.nanoTime() - lastReconcileNanos;
+        if (state.reconciled.at != null && sinceLast < reconcileIntervalNanos && !dirty) {
+            return;
+        }
+        try {
+            reconcile();
+        } catch (RuntimeException e) {
+            log.warn("Failed to reconcile people stats with the database: {}", e.getMessage());
+        }
+    }
+
+    // пересчет агрегатов двумя запросами GROUP BY; накопленные изменения после этого начинаются с нуля
+    synchronized void reconcile() {
+        dirty = false;
+        lastReconcileNanos = System.nanoTime();
+
+        long[] ages = new long[AGE_BUCKETS];
+        jdbcTemplate.query(COUNT_BY_AGE_SQL, resultSet -> {
+            ages[resultSet.getInt(1)] = resultSet.getLong(2);
+        });
+        long total = 0;
+        for (long count : ages) {
+            total += count;
+        }
+
+        Map<LocalDate, Long> createdPerDay = new HashMap<>();
+        jdbcTemplate.query(COUNT_BY_DAY_SQL, resultSet -> {
+            createdPerDay.put(resultSet.getDate(1).toLocalDate(), resultSet.getLong(2));
+        }, Timestamp.valueOf(LocalDate.now().minusDays(days - 1).atStartOfDay()));
+
+        State previous = state;
+        state = new State(new Reconciled(total, ages, createdPerDay, LocalDateTime.now()));
+
+        long drift = total - (previous.reconciled.total + previous.changes.total.sum());
+        if (drift != 0 && previous.reconciled.at != null) {
+            log.debug("People stats drifted from the database by {}", drift);
+        }
+    }
+
+    private static int ageBucket(int age) {
+        return Math.min(Math.max(age, 0) / AGE_BUCKET_WIDTH, AGE_BUCKETS - 1);
+    }
+
+    // результат сверки и изменения после нее меняются вместе одной volatile ссылкой
+    private static final class State {
+        final Reconciled reconciled;
+        final Changes changes = new Changes();
+
+        State(Reconciled reconciled) {
+            this.reconciled = reconciled;
+        }
+    }
+
+    private static final class Reconciled {
+        final long total;
+        final long[] ages;
+        final Map<LocalDate, Long> days;
+        final LocalDateTime at;
+
+        Reconciled(long total, long[] ages, Map<LocalDate, Long> days, LocalDateTime at) {
+            this.total = total;
+            this.ages = ages;
+            this.days = days;
+            this.at = at;
+        }
+    }
+
+    // LongAdder: записи из многих потоков не борются за одну ячейку
+    private static final class Changes {
+        final LongAdder total = new LongAdder();
+        final LongAdder[] ages = new LongAdder[AGE_BUCKETS];
+        final Map<LocalDate, LongAdder> days = new ConcurrentHashMap<>();
+
+        Changes() {
+            for (int i = 0; i < AGE_BUCKETS; i++) {
+                ages[i] = new LongAdder();
+            }
+        }
+
+        void add(Person person) {
+            total.increment();
+            ages[ageBucket(person.getAge())].increment();
+            if (person.getCreated_at() != null) {
+                days.computeIfAbsent(person.getCreated_at().toLocalDate(), day -> new LongAdder()).increment();
+            }
+        }
+
+        void remove(int age, LocalDateTime createdAt) {
+            total.decrement();
+            ages[ageBucket(age)].decrement();
+            if (createdAt != null) {
+                days.computeIfAbsent(createdAt.toLocalDate(), day -> new LongAdder()).decrement();
+            }
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.timgapps.springcourse.FirstRestApp.services;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.timgapps.springcourse.FirstRestApp.models.Person;
+import com.timgapps.springcourse.FirstRestApp.repositories.PeopleStamp;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+
+// кэш людей по id перед базой данных (read-through)
+// ограничен по количеству записей и по времени жизни, вытесняются давно не используемые записи
+// отдельно кэшируются id, которых нет в базе, чтобы повторные запросы несуществующих людей (404) не шли в базу
+// счетчики попаданий/промахов/вытеснений публикуются в метриках cache.* (name=people и people.missing)
+// evict, пришедший во время загрузки из базы, не должен потеряться: найденный человек кладется в кэш
+// под блокировкой ключа Caffeine (evict ее дожидается), а "нет в базе" и "версия" таблицы запоминаются,
+// только если с начала загрузки evict не было
+@Component
+public class PersonCache {
+
+    // счетчики evict по остатку id от деления на их количество (степень двойки)
+    private static final int INVALIDATION_STRIPES = 1024;
+
+    private final boolean enabled;
+
+    private final Cache<Integer, Person> people;
+
+    // id, для которых база вернула "не найдено"
+    private final Cache<Integer, Boolean> missingIds;
+
+    // сколько живет запомненная "версия" таблицы людей (для ETag списка)
+    private final long stampTtlNanos;
+
+    private final AtomicLongArray invalidations = new AtomicLongArray(INVALIDATION_STRIPES);
+
+    // evict заменяет запись новым пустым объектом, поэтому compareAndSet загрузки, начатой до evict, не пройдет
+    private final AtomicReference<CachedStamp> stamp = new AtomicReference<>(new CachedStamp(null, 0));
+
+    @Autowired
+    public PersonCache(@Value("${people.cache.enabled:true}") boolean enabled,
+                       @Value("${people.cache.maximum-size:10000}") long maximumSize,
+                       @Value("${people.cache.ttl:10m}") Duration ttl,
+                       @Value("${people.cache.missing.maximum-size:10000}") long missingMaximumSize,
+                       @Value("${people.cache.missing.ttl:30s}") Duration missingTtl,
+                       @Value("${people.cache.stamp-ttl:1s}") Duration stampTtl,
+                       MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.stampTtlNanos = stampTtl.toNanos();
+        this.people = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        this.missingIds = Caffeine.newBuilder()
+                .maximumSize(missingMaximumSize)
+                .expireAfterWrite(missingTtl)
+                .recordStats()
+                .build();
+
+        CaffeineCacheMetrics.monitor(meterRegistry, people, "people");
+        CaffeineCacheMetrics.monitor(meterRegistry, missingIds, "people.missing");
+    }
+
+    // возвращает человека из кэша, а если его там нет - загружает через loader и кладет в кэш
+    public Optional<Person> get(int id, IntFunction<Optional<Person>> loader) {
+        if (!enabled) {
+            return loader.apply(id);
+        }
+        if (missingIds.getIfPresent(id) != null) {
+            return Optional.empty();
+        }
+
+        int stripe = stripe(id);
+        long seen = invalidations.get(stripe);
+        // если loader ничего не нашел, Caffeine ничего не сохраняет и возвращает null
+        Person person = people.get(id, key -> loader.apply(key).orElse(null));
+        if (person == null) {
+            // compute и invalidate в evict выполняются под одной блокировкой ключа: либо evict удалит
+            // эту запись, либо счетчик уже увеличен и она не добавится
+            missingIds.asMap().compute(id, (key, missing) ->
+                    invalidations.get(stripe) == seen ? Boolean.TRUE : missing);
+        }
+        return Optional.ofNullable(person);
+    }
+
+    // возвращает запомненную "версию" таблицы, если она еще не устарела, иначе загружает ее заново
+    // частые опросы списка людей в пределах stampTtl не доходят до базы
+    public PeopleStamp getStamp(Supplier<PeopleStamp> loader) {
+        if (!enabled) {
+            return loader.get();
+        }
+        CachedStamp current = stamp.get();
+        long now = System.nanoTime();
+        if (current.stamp != null && now - current.loadedAt <= stampTtlNanos) {
+            return current.stamp;
+        }
+        PeopleStamp loaded = loader.get();
+        stamp.compareAndSet(current, new CachedStamp(loaded, now));
+        return loaded;
+    }
+
+    // вызывается после изменения человека в базе
+    // счетчик увеличивается до invalidate, см. get
+    public void evict(int id) {
+        invalidations.incrementAndGet(stripe(id));
+        people.invalidate(id);
+        missingIds.invalidate(id);
+        stamp.set(new CachedStamp(null, 0));
+    }
+
+    private static int stripe(int id) {
+        return id & (INVALIDATION_STRIPES - 1);
+    }
+
+    private static final class CachedStamp {
+        final PeopleStamp stamp;
+        final long loadedAt;
+
+        CachedStamp(PeopleStamp stamp, long loadedAt) {
+            this.stamp = stamp;
+            this.loadedAt = loadedAt;
+        }
+    }
+}
@@ -0,0 +1,518 @@
+package com.timgapps.springcourse.FirstRestApp.services;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.timgapps.springcourse.FirstRestApp.metrics.PeopleMetrics;
+import com.timgapps.springcourse.FirstRestApp.models.Person;
+import com.timgapps.springcourse.FirstRestApp.repositories.PeopleRepository;
+import com.timgapps.springcourse.FirstRestApp.util.PersonChangeEvent;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.timgapps.springcourse.FirstRestApp.metrics.PeopleMetrics.Operation.REPOSITORY_FIND_CHANGED;
+import static com.timgapps.springcourse.FirstRestApp.services.TransactionCallbacks.afterCommit;
+
+// лента изменений людей для GET /people/changes (Server-Sent Events) вместо периодического чтения GET /people
+// события после коммита пишутся в кольцевой буфер на people.changes.buffer-size событий;
+// каждое событие сериализуется в JSON один раз, подписчики читают его из общего буфера,
+// у каждого подписчика только своя позиция в буфере
+// смещение события (id в SSE) - "время изменения в микросекундах:id человека", по нему клиент
+// продолжает чтение после переподключения (заголовок Last-Event-ID); время хранится с той же точностью,
+// что и в колонке updated_at, поэтому чтение из базы по смещению всегда продвигается вперед
+// подписчик, который переподключился со смещением, которого уже нет в буфере, дочитывает изменения
+// из базы и возвращается к буферу; отставший на размер буфера или зависший на одной отправке дольше
+// people.changes.send-timeout отключается и сам переподключается со своим смещением
+// из базы восстанавливаются только созданные и измененные люди: удаления, которых подписчик не застал
+// в буфере, теряются (у удаленной строки нет следа в таблице)
+// updated_at ставится до коммита, и транзакция, начатая раньше, может закоммититься позже уже прочитанной;
+// поэтому чтение из базы начинается на people.changes.replay-overlap раньше смещения
+// доставка "хотя бы один раз" для транзакций короче replay-overlap: часть событий может прийти повторно
+@Component
+public class PersonChangeFeed {
+
+    private static final Logger log = LoggerFactory.getLogger(PersonChangeFeed.class);
+
+    public static final String CREATED = "CREATED";
+    public static final String UPDATED = "UPDATED";
+    public static final String DELETED = "DELETED";
+
+    private static final long NOT_SENDING = Long.MIN_VALUE;
+
+    private final PeopleRepository peopleRepository;
+
+    private final ObjectMapper objectMapper;
+
+    private final PeopleMetrics peopleMetrics;
+
+    // событие с порядковым номером seq лежит в ring[seq % capacity]
+    private final Change[] ring;
+    private final int capacity;
+    // номер следующего события, меняется только под publishLock
+    private volatile long head;
+    private final Object publishLock = new Object();
+
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger subscriberCount = new AtomicInteger();
+    private final int maxSubscribers;
+
+    private final long timeoutMillis;
+    private final long heartbeatNanos;
+    private final int replayPageSize;
+    private final long replayOverlapMicros;
+    private final long sendTimeoutNanos;
+
+    // поток раздачи будит подписчиков при новых событиях, отправка идет в пуле senders:
+    // медленный клиент занимает один поток пула, а не останавливает всю раздачу;
+    // пул растет до max-senders, пока зависшие отправки не отвалятся по send-timeout
+    private final Thread dispatcher;
+    private final ThreadPoolExecutor senders;
+    private volatile boolean running = true;
+
+    private final Counter replays;
+    private final Counter drops;
+
+    @Autowired
+    public PersonChangeFeed(PeopleRepository peopleRepository, ObjectMapper objectMapper,
+                            PeopleMetrics peopleMetrics, MeterRegistry meterRegistry,
+                            @Value("${people.changes.buffer-size:4096}") int bufferSize,
+                            @Value("${people.changes.max-subscribers:1000}") int maxSubscribers,
+                            @Value("${people.changes.senders:4}") int senders,
+                            @Value("${people.changes.max-senders:64}") int maxSenders,
+                            @Value("${people.changes.send-timeout:10s}") Duration sendTimeout,
+                            @Value("${people.changes.timeout:30m}") Duration timeout,
+                            @Value("${people.changes.heartbeat:15s}") Duration heartbeat,
+                            @Value("${people.changes.replay-page-size:500}") int replayPageSize,
+                            @Value("${people.changes.replay-overlap:5s}") Duration replayOverlap) {
+        this.peopleRepository = peopleRepository;
+        this.objectMapper = objectMapper;
+        this.peopleMetrics = peopleMetrics;
+        this.capacity = bufferSize;
+        this.ring = new Change[bufferSize];
+        this.maxSubscribers = maxSubscribers;
+        this.timeoutMillis = timeout.toMillis();
+        this.heartbeatNanos = heartbeat.toNanos();
+        this.replayPageSize = replayPageSize;
+        this.replayOverlapMicros = TimeUnit.NANOSECONDS.toMicros(replayOverlap.toNanos());
+        this.sendTimeoutNanos = sendTimeout.toNanos();
+        this.dispatcher = new Thread(this::dispatchLoop, "people-changes-dispatcher");
+        this.dispatcher.setDaemon(true);
+        AtomicInteger senderNumber = new AtomicInteger();
+        // без очереди: когда все потоки заняты, подписчик остается запланированным на следующее пробуждение раздачи
+        this.senders = new ThreadPoolExecutor(senders, Math.max(senders, maxSenders), 60, TimeUnit.SECONDS,
+                new SynchronousQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, "people-changes-sender-" + senderNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        Gauge.builder("people.changes.subscribers", subscriberCount, AtomicInteger::get)
+                .description("Open GET /people/changes streams")
+                .register(meterRegistry);
+        FunctionCounter.builder("people.changes.published", this, feed -> feed.head)
+                .description("Person change events published to the feed")
+                .register(meterRegistry);
+        replays = Counter.builder("people.changes.replays")
+                .description("Subscribers that read changes from the database because they were not in the buffer")
+                .register(meterRegistry);
+        drops = Counter.builder("people.changes.dropped")
+                .description("Subscribers disconnected because they fell behind the buffer or a send timed out")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        dispatcher.start();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        synchronized (publishLock) {
+            publishLock.notifyAll();
+        }
+        dispatcher.join(TimeUnit.SECONDS.toMillis(5));
+        senders.shutdownNow();
+        for (Subscriber subscriber : subscribers) {
+            subscriber.emitter.complete();
+        }
+    }
+
+    public void created(Person person) {
+        afterCommit(() -> publish(change(CREATED, person.getId(), person.getVersion(), person.getUpdatedAt())));
+    }
+
+    public void createdAll(List<Person> people) {
+        afterCommit(() -> {
+            for (Person person : people) {
+                publish(change(CREATED, person.getId(), person.getVersion(), person.getUpdatedAt()));
+            }
+        });
+    }
+
+    public void updated(int id, int version, LocalDateTime updatedAt) {
+        afterCommit(() -> publish(change(UPDATED, id, version, updatedAt)));
+    }
+
+    public void deleted(int id) {
+        afterCommit(() -> publish(change(DELETED, id, null, LocalDateTime.now().truncatedTo(ChronoUnit.MICROS))));
+    }
+
+    // новый подписчик; lastEventId - смещение последнего полученного события или null (только новые события)
+    // null, если подписчиков уже people.changes.max-subscribers; неверное смещение - IllegalArgumentException
+    public SseEmitter subscribe(String lastEventId) {
+        Offset from = lastEventId == null ? null : Offset.parse(lastEventId);
+        if (subscriberCount.incrementAndGet() > maxSubscribers) {
+            subscriberCount.decrementAndGet();
+            return null;
+        }
+
+        Subscriber subscriber = new Subscriber(new SseEmitter(timeoutMillis));
+        long current = head;
+        if (from == null) {
+            subscriber.cursor = current;
+        } else {
+            // клиент переподключился быстро - его событие еще в буфере, в базу идти не нужно
+            long seq = findInRing(from, current);
+            if (seq >= 0) {
+                subscriber.cursor = seq + 1;
+            } else {
+                replays.increment();
+                subscriber.replayFrom = from;
+            }
+        }
+
+        subscriber.emitter.onCompletion(subscriber::close);
+        subscriber.emitter.onTimeout(subscriber::close);
+        subscriber.emitter.onError(e -> subscriber.close());
+        subscribers.add(subscriber);
+        subscriber.schedule();
+        return subscriber.emitter;
+    }
+
+    private Change change(String type, int id, Integer version, LocalDateTime updatedAt) {
+        PersonChangeEvent event = new PersonChangeEvent(type, id, version, updatedAt);
+        try {
+            return new Change(type, new Offset(toEpochMicros(updatedAt), id), objectMapper.writeValueAsString(event));
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void publish(Change change) {
+        synchronized (publishLock) {
+            ring[(int) (head % capacity)] = change;
+            head = head + 1;
+            publishLock.notifyAll();
+        }
+    }
+
+    // номер события со смещением offset в буфере или -1
+    private long findInRing(Offset offset, long current) {
+        for (long seq = current - 1; seq > current - capacity && seq >= 0; seq--) {
+            Change change = ring[(int) (seq % capacity)];
+            if (change != null && change.offset.equals(offset)) {
+                return seq;
+            }
+        }
+        return -1;
+    }
+
+    // будит подписчиков, когда появились новые события, и раз в people.changes.heartbeat,
+    // чтобы отправить комментарий-heartbeat и заметить закрытые соединения
+    private void dispatchLoop() {
+        long seen = head;
+        long lastHeartbeat = System.nanoTime();
+        while (running) {
+            try {
+                synchronized (publishLock) {
+                    long remaining;
+                    while (running && head == seen
+                            && (remaining = heartbeatNanos - (System.nanoTime() - lastHeartbeat)) > 0) {
+                        TimeUnit.NANOSECONDS.timedWait(publishLock, remaining);
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            seen = head;
+            boolean heartbeat = System.nanoTime() - lastHeartbeat >= heartbeatNanos;
+            if (heartbeat) {
+                lastHeartbeat = System.nanoTime();
+            }
+            long now = System.nanoTime();
+            for (Subscriber subscriber : subscribers) {
+                if (subscriber.lagging(now)) {
+                    subscriber.drop();
+                    continue;
+                }
+                if (heartbeat) {
+                    subscriber.heartbeatDue = true;
+                }
+                subscriber.schedule();
+            }
+        }
+    }
+
+    private static long toEpochMicros(LocalDateTime dateTime) {
+        Instant instant = dateTime.atZone(ZoneId.systemDefault()).toInstant();
+        return TimeUnit.SECONDS.toMicros(instant.getEpochSecond()) + TimeUnit.NANOSECONDS.toMicros(instant.getNano());
+    }
+
+    // событие в буфере: JSON уже готов, отправляется всем подписчикам как есть
+    private static final class Change {
+        final String type;
+        final Offset offset;
+        final String id;
+        final String json;
+
+        Change(String type, Offset offset, String json) {
+            this.type = type;
+            this.offset = offset;
+            this.id = offset.toString();
+            this.json = json;
+        }
+    }
+
+    // смещение в ленте: время изменения (мкс) и id человека
+    static final class Offset {
+        final long micros;
+        final int id;
+
+        Offset(long micros, int id) {
+            this.micros = micros;
+            this.id = id;
+        }
+
+        static Offset parse(String value) {
+            int separator = value.indexOf(':');
+            try {
+                if (separator > 0) {
+                    return new Offset(Long.parseLong(value.substring(0, separator)),
+                            Integer.parseInt(value.substring(separator + 1)));
+                }
+            } catch (NumberFormatException e) {
+                // ниже то же исключение, что и без разделителя
+            }
+            throw new IllegalArgumentException("Invalid change offset: " + value);
+        }
+
+        LocalDateTime updatedAt() {
+            return LocalDateTime.ofInstant(Instant.EPOCH.plus(micros, ChronoUnit.MICROS), ZoneId.systemDefault());
+        }
+
+        Offset minusMicros(long amount) {
+            return new Offset(micros - amount, id);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Offset)) return false;
+            Offset offset = (Offset) o;
+            return micros == offset.micros && id == offset.id;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(micros) * 31 + id;
+        }
+
+        @Override
+        public String toString() {
+            return micros + ":" + id;
+        }
+    }
+
+    // соединение подписчика; отправку для него в каждый момент ведет не больше одного потока (scheduled)
+    private final class Subscriber {
+        final SseEmitter emitter;
+        final AtomicBoolean scheduled = new AtomicBoolean();
+        final AtomicBoolean removed = new AtomicBoolean();
+
+        // номер следующего события в буфере
+        volatile long cursor;
+        // не null - сначала дочитать изменения из базы после этого смещения
+        volatile Offset replayFrom;
+        volatile boolean heartbeatDue;
+        // System.nanoTime() начала текущей отправки или NOT_SENDING
+        volatile long sendStarted = NOT_SENDING;
+        // отключен раздачей: соединение завершает тот, кто последним им владел
+        volatile boolean dropped;
+        // соединение закрыл контейнер (колбэки emitter'а): больше не пишем в него и не завершаем его
+        volatile boolean closed;
+
+        Subscriber(SseEmitter emitter) {
+            this.emitter = emitter;
+        }
+
+        void schedule() {
+            if (removed.get() || !(replayFrom != null || cursor < head || heartbeatDue)) {
+                return;
+            }
+            if (scheduled.compareAndSet(false, true)) {
+                try {
+                    senders.execute(this::drain);
+                } catch (RejectedExecutionException e) {
+                    scheduled.set(false);
+                }
+            }
+        }
+
+        // отстал на размер буфера (его события уже перезаписаны) или слишком долго ждет одну отправку
+        boolean lagging(long now) {
+            long started = sendStarted;
+            return (replayFrom == null && head - cursor >= capacity)
+                    || (started != NOT_SENDING && now - started > sendTimeoutNanos);
+        }
+
+        // не ждет зависшую отправку: если отправка идет, соединение завершит drain, когда она закончится
+        void drop() {
+            dropped = true;
+            if (remove()) {
+                drops.increment();
+            }
+            if (scheduled.compareAndSet(false, true) && !closed) {
+                emitter.complete();
+            }
+        }
+
+        private void drain() {
+            try {
+                do {
+                    boolean sent = false;
+                    if (replayFrom != null) {
+                        sent = replay();
+                    }
+                    long current = head;
+                    while (cursor < current && !removed.get()) {
+                        Change change = ring[(int) (cursor % capacity)];
+                        // head перечитывается после чтения ячейки: если ее уже перезаписали, подписчик отстал
+                        if (cursor <= head - capacity) {
+                            drop();
+                            break;
+                        }
+                        send(change);
+                        sent = true;
+                        cursor++;
+                    }
+                    if (heartbeatDue && !removed.get()) {
+                        heartbeatDue = false;
+                        if (!sent) {
+                            send(SseEmitter.event().comment("heartbeat"));
+                        }
+                    }
+                    scheduled.set(false);
+                    // пока мы заканчивали, могли прийти новые события
+                } while (!removed.get() && (replayFrom != null || cursor < head)
+                        && scheduled.compareAndSet(false, true));
+            } catch (IOException | IllegalStateException e) {
+                // клиент отключился или соединение уже завершено
+                remove();
+            } catch (RuntimeException e) {
+                log.warn("Failed to send person changes, closing the stream: {}", e.getMessage());
+                remove();
+                if (!closed) {
+                    emitter.completeWithError(e);
+                }
+            }
+            if (dropped && !closed) {
+                // клиент переподключится с Last-Event-ID последнего полученного события
+                emitter.complete();
+            }
+        }
+
+        // дочитывает изменения из базы (с запасом replay-overlap до смещения) и возвращает подписчика
+        // к событиям, пришедшим с начала чтения; они частично повторяют прочитанное из базы
+        private boolean replay() throws IOException {
+            long replayHead = head;
+            Offset from = replayFrom.minusMicros(replayOverlapMicros);
+            boolean sent = false;
+            List<Person> people;
+            do {
+                long start = System.nanoTime();
+                people = peopleRepository.findChangedAfter(from.updatedAt(), from.id,
+                        PageRequest.of(0, replayPageSize));
+                peopleMetrics.record(REPOSITORY_FIND_CHANGED, start);
+                for (Person person : people) {
+                    String type = person.getUpdatedAt().equals(person.getCreated_at()) ? CREATED : UPDATED;
+                    Change change = change(type, person.getId(), person.getVersion(), person.getUpdatedAt());
+                    send(change);
+                    sent = true;
+                    from = change.offset;
+                }
+            } while (people.size() == replayPageSize && !removed.get());
+            // сначала позиция в буфере: раздача проверяет отставание, только когда replayFrom == null
+            cursor = replayHead;
+            replayFrom = null;
+            return sent;
+        }
+
+        private void send(Change change) throws IOException {
+            send(SseEmitter.event()
+                    .id(change.id)
+                    .name(change.type)
+                    .data(change.json, MediaType.APPLICATION_JSON));
+        }
+
+        // отправляет только drain, а он у подписчика выполняется в одном потоке за раз (scheduled)
+        // после закрытия соединения Tomcat отдает тот же объект ответа следующему запросу, поэтому флаги
+        // проверяются перед каждой отправкой; после close() и remove() новых отправок нет
+        private void send(SseEmitter.SseEventBuilder event) throws IOException {
+            if (closed || removed.get()) {
+                throw new IllegalStateException("Person change stream is closed");
+            }
+            sendStarted = System.nanoTime();
+            try {
+                emitter.send(event);
+            } finally {
+                sendStarted = NOT_SENDING;
+            }
+        }
+
+        // колбэки контейнера: соединение закрыто; не ждет отправку, которая еще пишет в него
+        // (она может висеть до send-timeout и держала бы поток контейнера), она закончится ошибкой записи
+        void close() {
+            closed = true;
+            remove();
+        }
+
+        boolean remove() {
+            if (removed.compareAndSet(false, true)) {
+                subscribers.remove(this);
+                subscriberCount.decrementAndGet();
+                return true;
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package com.timgapps.springcourse.FirstRestApp.services;
+
+import com.timgapps.springcourse.FirstRestApp.models.Person;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+
+// заполняет поля человека, которые добавляются на самом сервере перед сохранением
+// отдельный компонент без зависимостей, чтобы его можно было измерить бенчмарком (PersonEnricherBenchmark)
+@Component
+public class PersonEnricher {
+
+    public void enrich(Person person) {
+        // одно и то же время: created_at = updated_at у еще не изменявшегося человека (см. PersonChangeFeed)
+        LocalDateTime now = LocalDateTime.now().truncatedTo(ChronoUnit.MICROS);
+        person.setCreatedAt(now);
+        person.setUpdatedAt(now);
+        person.setCreatedWho("ADMIN");
+    }
+}
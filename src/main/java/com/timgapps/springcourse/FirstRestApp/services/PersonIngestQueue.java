@@ -0,0 +1,365 @@
+package com.timgapps.springcourse.FirstRestApp.services;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.timgapps.springcourse.FirstRestApp.models.Person;
+import com.timgapps.springcourse.FirstRestApp.util.PersonEmailConflictException;
+import com.timgapps.springcourse.FirstRestApp.util.PersonIngestStatus;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static com.timgapps.springcourse.FirstRestApp.util.PersonIngestStatus.State.*;
+
+// асинхронное создание людей (people.ingest.mode=async)
+// POST /people только кладет человека в ограниченную очередь в памяти и сразу отвечает 202 с tracking id,
+// а отдельный поток забирает людей из очереди пачками и сохраняет их через PeopleService.saveAll
+// если очередь заполнена - запрос отклоняется (429), так клиенты не могут завалить сервер быстрее, чем пишет база
+// при people.ingest.log.enabled=true принятые люди сначала дописываются в локальный журнал, и после падения
+// приложения незаписанные в базу люди снова ставятся в очередь при старте
+// создается при старте и при spring.main.lazy-initialization=true: журнал должен восстанавливаться сразу,
+// а не при первом запросе
+@Service
+@Lazy(false)
+@ConditionalOnProperty(name = "people.ingest.mode", havingValue = "async")
+public class PersonIngestQueue {
+
+    private static final Logger log = LoggerFactory.getLogger(PersonIngestQueue.class);
+
+    // строки журнала: "A<tab>trackingId<tab>json" - человек принят, "C<tab>trackingId" - записан в базу
+    private static final String ACCEPTED = "A";
+    private static final String COMMITTED = "C";
+
+    // человек в очереди вместе с его tracking id
+    private static class Pending {
+        private final String trackingId;
+        private final Person person;
+
+        Pending(String trackingId, Person person) {
+            this.trackingId = trackingId;
+            this.person = person;
+        }
+    }
+
+    private final PeopleService peopleService;
+
+    private final ObjectMapper objectMapper;
+
+    private final BlockingQueue<Pending> queue;
+
+    private final Cache<String, PersonIngestStatus> statuses;
+
+    private final int batchSize;
+
+    private final Duration shutdownTimeout;
+
+    // журнал принятых людей, null если журнал выключен
+    private final Path logPath;
+    private BufferedWriter logWriter;
+    // запись в журнал и постановка в очередь должны идти в одном порядке
+    private final Object logLock = new Object();
+
+    private final Thread writer;
+    private volatile boolean running = true;
+    // пока люди из старого журнала ставятся в очередь, журнал нельзя очищать, даже если очередь опустела
+    private volatile boolean recovering;
+
+    private final Counter accepted;
+    private final Counter rejected;
+    private final Counter written;
+    private final Counter failed;
+    private final Timer flushTimer;
+
+    @Autowired
+    public PersonIngestQueue(PeopleService peopleService, ObjectMapper objectMapper, MeterRegistry meterRegistry,
+                             @Value("${people.ingest.capacity:10000}") int capacity,
+                             @Value("${people.ingest.batch-size:500}") int batchSize,
+                             @Value("${people.ingest.status-ttl:1h}") Duration statusTtl,
+                             @Value("${people.ingest.shutdown-timeout:30s}") Duration shutdownTimeout,
+                             @Value("${people.ingest.log.enabled:false}") boolean logEnabled,
+                             @Value("${people.ingest.log.path:ingest.log}") String logPath) {
+        this.peopleService = peopleService;
+        this.objectMapper = objectMapper;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.batchSize = batchSize;
+        this.shutdownTimeout = shutdownTimeout;
+        this.statuses = Caffeine.newBuilder()
+                .maximumSize(Math.max(capacity * 10L, 100_000))
+                .expireAfterWrite(statusTtl)
+                .build();
+        this.logPath = logEnabled ? Paths.get(logPath) : null;
+        this.writer = new Thread(this::writeLoop, "people-ingest-writer");
+
+        Gauge.builder("people.ingest.queue.depth", queue, BlockingQueue::size)
+                .description("Persons accepted but not yet written to the database")
+                .register(meterRegistry);
+        accepted = meterRegistry.counter("people.ingest.persons", "result", "accepted");
+        rejected = meterRegistry.counter("people.ingest.persons", "result", "rejected");
+        written = meterRegistry.counter("people.ingest.persons", "result", "written");
+        failed = meterRegistry.counter("people.ingest.persons", "result", "failed");
+        flushTimer = Timer.builder("people.ingest.flush")
+                .description("Time to write one batch of queued persons to the database")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() throws IOException {
+        Map<String, String> notCommitted = logPath == null ? Map.of() : openLog();
+        writer.start();
+        requeue(notCommitted);
+    }
+
+    // перестаем принимать людей и ждем до people.ingest.shutdown-timeout, пока поток записи допишет в базу
+    // все, что уже лежит в очереди; прерываем его только потом, чтобы не оборвать batch посреди JDBC вызова
+    @PreDestroy
+    public void stop() throws InterruptedException, IOException {
+        running = false;
+        writer.join(shutdownTimeout.toMillis());
+        if (writer.isAlive()) {
+            log.warn("Ingest writer did not finish in {}, {} queued persons are not written{}", shutdownTimeout,
+                    queue.size(), logPath != null ? " (they stay in the ingest log)" : "");
+            writer.interrupt();
+            writer.join(TimeUnit.SECONDS.toMillis(5));
+        }
+        if (logWriter != null) {
+            synchronized (logLock) {
+                logWriter.close();
+            }
+        }
+    }
+
+    // ставит человека в очередь на запись, возвращает его статус или null, если очередь заполнена
+    // или приложение останавливается
+    public PersonIngestStatus submit(Person person) {
+        if (!running) {
+            rejected.increment();
+            return null;
+        }
+        Pending pending = new Pending(UUID.randomUUID().toString(), person);
+        PersonIngestStatus status = new PersonIngestStatus(pending.trackingId, QUEUED, null, null);
+        // статус кладем до очереди, иначе поток записи может успеть выставить WRITTEN раньше нас
+        statuses.put(pending.trackingId, status);
+
+        boolean queued;
+        if (logPath == null) {
+            queued = queue.offer(pending);
+        } else {
+            synchronized (logLock) {
+                // stop закрывает журнал под этим же локом уже после running = false
+                queued = running && queue.remainingCapacity() > 0;
+                if (queued) {
+                    appendToLog(ACCEPTED + "\t" + pending.trackingId + "\t" + toJson(person));
+                    queue.add(pending);
+                }
+            }
+        }
+
+        // остановка началась, пока мы ставили человека в очередь: поток записи мог уже выйти, забираем его назад
+        // (с журналом человек не потеряется - его запишут после перезапуска)
+        if (queued && logPath == null && !running && queue.remove(pending)) {
+            queued = false;
+        }
+        if (!queued) {
+            statuses.invalidate(pending.trackingId);
+            rejected.increment();
+            return null;
+        }
+        accepted.increment();
+        return status;
+    }
+
+    public PersonIngestStatus getStatus(String trackingId) {
+        return statuses.getIfPresent(trackingId);
+    }
+
+    private void writeLoop() {
+        List<Pending> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                Pending first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                // берем все, что уже накопилось, но не больше batchSize
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+                flush(batch);
+            } catch (InterruptedException e) {
+                // время на остановку вышло (см. stop), остальное в очереди не пишем
+                return;
+            } catch (RuntimeException e) {
+                log.error("Failed to write queued persons", e);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void flush(List<Pending> batch) {
+        long start = System.nanoTime();
+        List<Person> people = new ArrayList<>(batch.size());
+        for (Pending pending : batch) {
+            people.add(pending.person);
+        }
+
+        try {
+            List<Person> conflicts = peopleService.saveAll(people);
+            for (Pending pending : batch) {
+                if (conflicts.contains(pending.person)) {
+                    failed.increment();
+                    statuses.put(pending.trackingId, new PersonIngestStatus(pending.trackingId, FAILED, null,
+                            PersonEmailConflictException.MESSAGE));
+                } else {
+                    markWritten(pending);
+                }
+            }
+        } catch (RuntimeException e) {
+            // пачка откатилась целиком - пишем людей по одному, чтобы не потерять валидных
+            for (Pending pending : batch) {
+                try {
+                    peopleService.save(pending.person);
+                    markWritten(pending);
+                } catch (RuntimeException ex) {
+                    failed.increment();
+                    statuses.put(pending.trackingId, new PersonIngestStatus(pending.trackingId, FAILED, null,
+                            ex.getMessage()));
+                }
+            }
+        }
+
+        if (logPath != null) {
+            commitToLog(batch);
+        }
+        flushTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+
+    private void markWritten(Pending pending) {
+        written.increment();
+        statuses.put(pending.trackingId, new PersonIngestStatus(pending.trackingId, WRITTEN,
+                pending.person.getId(), null));
+    }
+
+    // отмечаем пачку записанной, а если очередь опустела - все принятые люди уже в базе и журнал можно очистить
+    private void commitToLog(List<Pending> batch) {
+        synchronized (logLock) {
+            if (queue.isEmpty() && !recovering) {
+                try {
+                    logWriter.close();
+                    logWriter = Files.newBufferedWriter(logPath, StandardCharsets.UTF_8,
+                            StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return;
+            }
+            StringBuilder lines = new StringBuilder();
+            for (Pending pending : batch) {
+                lines.append(COMMITTED).append('\t').append(pending.trackingId).append('\n');
+            }
+            appendToLog(lines.substring(0, lines.length() - 1));
+        }
+    }
+
+    // вызывается под logLock
+    private void appendToLog(String line) {
+        try {
+            logWriter.write(line);
+            logWriter.write('\n');
+            // отдаем данные операционной системе, так запись переживет падение процесса
+            logWriter.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // читает журнал, оставшийся с прошлого запуска, и возвращает людей без отметки о записи (trackingId -> json)
+    private Map<String, String> openLog() throws IOException {
+        Map<String, String> notCommitted = new LinkedHashMap<>();
+        if (Files.exists(logPath)) {
+            for (String line : Files.readAllLines(logPath, StandardCharsets.UTF_8)) {
+                String[] parts = line.split("\t", 3);
+                if (parts.length == 3 && ACCEPTED.equals(parts[0])) {
+                    notCommitted.put(parts[1], parts[2]);
+                } else if (parts.length == 2 && COMMITTED.equals(parts[0])) {
+                    notCommitted.remove(parts[1]);
+                }
+            }
+        }
+
+        synchronized (logLock) {
+            // журнал начинаем заново только с незаписанными людьми
+            logWriter = Files.newBufferedWriter(logPath, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+            for (Map.Entry<String, String> entry : notCommitted.entrySet()) {
+                appendToLog(ACCEPTED + "\t" + entry.getKey() + "\t" + entry.getValue());
+            }
+        }
+        return notCommitted;
+    }
+
+    // снова ставит в очередь людей из старого журнала (put ждет, пока поток записи освободит место)
+    private void requeue(Map<String, String> notCommitted) throws IOException {
+        if (notCommitted.isEmpty()) {
+            return;
+        }
+        log.info("Re-queueing {} persons from ingest log {}", notCommitted.size(), logPath);
+        recovering = true;
+        try {
+            for (Map.Entry<String, String> entry : notCommitted.entrySet()) {
+                statuses.put(entry.getKey(), new PersonIngestStatus(entry.getKey(), QUEUED, null, null));
+                queue.put(new Pending(entry.getKey(), fromJson(entry.getValue())));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            recovering = false;
+        }
+    }
+
+    private String toJson(Person person) {
+        ObjectNode node = objectMapper.createObjectNode();
+        node.put("name", person.getName());
+        node.put("age", person.getAge());
+        node.put("email", person.getEmail());
+        return node.toString();
+    }
+
+    private Person fromJson(String json) throws IOException {
+        JsonNode node = objectMapper.readTree(json);
+        Person person = new Person(node.path("name").asText(null), node.path("age").asInt());
+        person.setEmail(node.path("email").asText(null));
+        return person;
+    }
+}
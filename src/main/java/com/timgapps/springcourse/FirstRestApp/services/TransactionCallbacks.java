@@ -0,0 +1,25 @@
+package com.timgapps.springcourse.FirstRestApp.services;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+// действия после коммита текущей транзакции: кэш чистится, когда новая строка уже видна другим,
+// а откаченная запись не попадает ни в агрегаты, ни в ленту изменений; вне транзакции - сразу
+final class TransactionCallbacks {
+
+    private TransactionCallbacks() {
+    }
+
+    static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+}
@@ -0,0 +1,81 @@
+package com.timgapps.springcourse.FirstRestApp.util;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+
+// ответ GET /people/stats: сколько всего людей, распределение по возрасту и сколько создано по дням
+// reconciledAt - когда агрегаты последний раз сверялись с базой (null - еще ни разу)
+public class PeopleStatsResponse {
+    private final long total;
+    private final List<AgeBucket> ages;
+    private final List<DayCount> createdPerDay;
+    private final LocalDateTime reconciledAt;
+
+    public PeopleStatsResponse(long total, List<AgeBucket> ages, List<DayCount> createdPerDay,
+                               LocalDateTime reconciledAt) {
+        this.total = total;
+        this.ages = ages;
+        this.createdPerDay = createdPerDay;
+        this.reconciledAt = reconciledAt;
+    }
+
+    public long getTotal() {
+        return total;
+    }
+
+    public List<AgeBucket> getAges() {
+        return ages;
+    }
+
+    public List<DayCount> getCreatedPerDay() {
+        return createdPerDay;
+    }
+
+    public LocalDateTime getReconciledAt() {
+        return reconciledAt;
+    }
+
+    // люди с возрастом от from до to включительно (to = null - без верхней границы)
+    public static class AgeBucket {
+        private final int from;
+        private final Integer to;
+        private final long count;
+
+        public AgeBucket(int from, Integer to, long count) {
+            this.from = from;
+            this.to = to;
+            this.count = count;
+        }
+
+        public int getFrom() {
+            return from;
+        }
+
+        public Integer getTo() {
+            return to;
+        }
+
+        public long getCount() {
+            return count;
+        }
+    }
+
+    public static class DayCount {
+        private final LocalDate date;
+        private final long count;
+
+        public DayCount(LocalDate date, long count) {
+            this.date = date;
+            this.count = count;
+        }
+
+        public LocalDate getDate() {
+            return date;
+        }
+
+        public long getCount() {
+            return count;
+        }
+    }
+}
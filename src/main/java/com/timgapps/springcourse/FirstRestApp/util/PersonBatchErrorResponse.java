@@ -0,0 +1,26 @@
+package com.timgapps.springcourse.FirstRestApp.util;
+
+import java.util.List;
+
+// ошибка по одному элементу пакетного создания: index - номер человека в присланном массиве/потоке
+public class PersonBatchErrorResponse extends PersonErrorResponse {
+    private int index;
+
+    public PersonBatchErrorResponse(int index, String message, long timestamp) {
+        super(message, timestamp);
+        this.index = index;
+    }
+
+    public PersonBatchErrorResponse(int index, String message, List<PersonFieldError> errors, long timestamp) {
+        super(message, errors, timestamp);
+        this.index = index;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public void setIndex(int index) {
+        this.index = index;
+    }
+}
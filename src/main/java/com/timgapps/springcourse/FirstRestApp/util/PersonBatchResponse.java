@@ -0,0 +1,30 @@
+package com.timgapps.springcourse.FirstRestApp.util;
+
+import java.util.List;
+
+// ответ на пакетное создание: сколько человек сохранено и ошибки по отдельным элементам
+public class PersonBatchResponse {
+    private int created;
+    private List<PersonBatchErrorResponse> errors;
+
+    public PersonBatchResponse(int created, List<PersonBatchErrorResponse> errors) {
+        this.created = created;
+        this.errors = errors;
+    }
+
+    public int getCreated() {
+        return created;
+    }
+
+    public void setCreated(int created) {
+        this.created = created;
+    }
+
+    public List<PersonBatchErrorResponse> getErrors() {
+        return errors;
+    }
+
+    public void setErrors(List<PersonBatchErrorResponse> errors) {
+        this.errors = errors;
+    }
+}
@@ -0,0 +1,36 @@
+package com.timgapps.springcourse.FirstRestApp.util;
+
+import java.time.LocalDateTime;
+
+// событие ленты GET /people/changes: что случилось с человеком (CREATED, UPDATED, DELETED),
+// его версия после изменения (у DELETED - null) и время изменения
+// сами данные человека не передаются: их можно получить через GET /people/{id}
+public class PersonChangeEvent {
+    private final String type;
+    private final int id;
+    private final Integer version;
+    private final LocalDateTime updatedAt;
+
+    public PersonChangeEvent(String type, int id, Integer version, LocalDateTime updatedAt) {
+        this.type = type;
+        this.id = id;
+        this.version = version;
+        this.updatedAt = updatedAt;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public Integer getVersion() {
+        return version;
+    }
+
+    public LocalDateTime getUpdatedAt() {
+        return updatedAt;
+    }
+}
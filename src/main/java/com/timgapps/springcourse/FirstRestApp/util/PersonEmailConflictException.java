@@ -0,0 +1,13 @@
+package com.timgapps.springcourse.FirstRestApp.util;
+
+// человек с таким email уже есть (ответ 409 Conflict)
+// без стека вызовов (см. PersonNotFoundException)
+public class PersonEmailConflictException extends RuntimeException {
+
+    // то же сообщение - в ошибках пакетного и асинхронного создания
+    public static final String MESSAGE = "Person with this email already exists";
+
+    public PersonEmailConflictException() {
+        super(MESSAGE, null, false, false);
+    }
+}
@@ -1,14 +1,28 @@
 package com.timgapps.springcourse.FirstRestApp.util;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.util.List;
+
 public class PersonErrorResponse {
     private String message;
     private long timestamp;
 
+    // ошибки по полям при невалидном человеке, в остальных ответах поля errors нет
+    @JsonInclude(JsonInclude.Include.NON_EMPTY)
+    private List<PersonFieldError> errors;
+
     public PersonErrorResponse(String message, long timestamp) {
         this.message = message;
         this.timestamp = timestamp;
     }
 
+    public PersonErrorResponse(String message, List<PersonFieldError> errors, long timestamp) {
+        this.message = message;
+        this.errors = errors;
+        this.timestamp = timestamp;
+    }
+
     public long getTimestamp() {
         return timestamp;
     }
@@ -24,4 +38,12 @@ public class PersonErrorResponse {
     public void setMessage(String message) {
         this.message = message;
     }
+
+    public List<PersonFieldError> getErrors() {
+        return errors;
+    }
+
+    public void setErrors(List<PersonFieldError> errors) {
+        this.errors = errors;
+    }
 }
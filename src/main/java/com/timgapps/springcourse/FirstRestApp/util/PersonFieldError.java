@@ -0,0 +1,21 @@
+package com.timgapps.springcourse.FirstRestApp.util;
+
+// ошибка валидации одного поля: клиенту не нужно разбирать строку "поле - сообщение;"
+// объекты создает и переиспользует PersonValidator, на каждый невалидный запрос новые не создаются
+public class PersonFieldError {
+    private final String field;
+    private final String message;
+
+    public PersonFieldError(String field, String message) {
+        this.field = field;
+        this.message = message;
+    }
+
+    public String getField() {
+        return field;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+}
@@ -0,0 +1,56 @@
+package com.timgapps.springcourse.FirstRestApp.util;
+
+// состояние человека, принятого в асинхронном режиме создания (people.ingest.mode=async)
+// возвращается клиенту в ответе 202 Accepted и по GET /people/ingest/{trackingId}
+public class PersonIngestStatus {
+
+    public enum State {
+        QUEUED,  // принят и ждет записи в базу
+        WRITTEN, // записан в базу, personId - его id
+        FAILED   // записать не удалось, причина в message
+    }
+
+    private String trackingId;
+    private State state;
+    private Integer personId;
+    private String message;
+
+    public PersonIngestStatus(String trackingId, State state, Integer personId, String message) {
+        this.trackingId = trackingId;
+        this.state = state;
+        this.personId = personId;
+        this.message = message;
+    }
+
+    public String getTrackingId() {
+        return trackingId;
+    }
+
+    public void setTrackingId(String trackingId) {
+        this.trackingId = trackingId;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public void setState(State state) {
+        this.state = state;
+    }
+
+    public Integer getPersonId() {
+        return personId;
+    }
+
+    public void setPersonId(Integer personId) {
+        this.personId = personId;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public void setMessage(String message) {
+        this.message = message;
+    }
+}
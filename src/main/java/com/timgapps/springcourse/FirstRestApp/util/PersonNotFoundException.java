@@ -1,5 +1,11 @@
 package com.timgapps.springcourse.FirstRestApp.util;
 
+// человека с таким id нет (ответ 404)
 public class PersonNotFoundException extends RuntimeException {
 
+    // без стека вызовов: исключение сразу превращается в ответ, стек никому не нужен,
+    // а его заполнение - самая дорогая часть создания исключения
+    public PersonNotFoundException() {
+        super(null, null, false, false);
+    }
 }
@@ -0,0 +1,97 @@
+package com.timgapps.springcourse.FirstRestApp.util;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.validation.ConstraintViolation;
+import javax.validation.Path;
+import javax.validation.Validator;
+import javax.validation.metadata.ConstraintDescriptor;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+// проверка DTO по аннотациям без BindingResult и исключений: вместо @Valid в контроллере
+// Spring для @Valid на каждую ошибку строит FieldError с набором кодов сообщений, а потом мы собирали строку
+// и бросали исключение; здесь ошибка поля - заранее созданный объект, а строка message для
+// каждого набора ошибок собирается один раз
+@Component
+public class PersonValidator {
+
+    // ограничение на число запомненных строк message (наборов ошибок конечное число, это просто защита)
+    private static final int MAX_CACHED_MESSAGES = 1024;
+
+    private static final Comparator<PersonFieldError> ERROR_ORDER =
+            Comparator.comparing(PersonFieldError::getField).thenComparing(PersonFieldError::getMessage);
+
+    private final Validator validator;
+
+    // поле -> ограничение (аннотация) -> ошибка
+    // одинаковые ограничения на одноименных полях разных DTO дают одну и ту же ошибку, что нам и нужно
+    private final Map<String, Map<ConstraintDescriptor<?>, PersonFieldError>> fieldErrors = new ConcurrentHashMap<>();
+
+    // набор ошибок -> строка "поле - сообщение;поле - сообщение;"
+    // ошибки в списках - одни и те же объекты из fieldErrors, поэтому сравнение списков дешевое
+    private final Map<List<PersonFieldError>, String> messages = new ConcurrentHashMap<>();
+
+    @Autowired
+    public PersonValidator(Validator validator) {
+        this.validator = validator;
+    }
+
+    // возвращает ошибки по полям (отсортированные по полю) или пустой список, если объект валиден
+    // groups - группы проверок, без них проверяется группа Default
+    public <T> List<PersonFieldError> validate(T object, Class<?>... groups) {
+        Set<ConstraintViolation<T>> violations = validator.validate(object, groups);
+        if (violations.isEmpty()) {
+            return List.of();
+        }
+
+        List<PersonFieldError> errors = new ArrayList<>(violations.size());
+        for (ConstraintViolation<T> violation : violations) {
+            errors.add(fieldError(violation));
+        }
+        errors.sort(ERROR_ORDER);
+        return errors;
+    }
+
+    // сообщение в прежнем виде, для клиентов, которые читают только поле message
+    public String message(List<PersonFieldError> errors) {
+        String message = messages.get(errors);
+        if (message == null) {
+            message = buildMessage(errors);
+            if (messages.size() < MAX_CACHED_MESSAGES) {
+                messages.putIfAbsent(List.copyOf(errors), message);
+            }
+        }
+        return message;
+    }
+
+    private PersonFieldError fieldError(ConstraintViolation<?> violation) {
+        String field = field(violation.getPropertyPath());
+        return fieldErrors.computeIfAbsent(field, f -> new ConcurrentHashMap<>())
+                .computeIfAbsent(violation.getConstraintDescriptor(),
+                        descriptor -> new PersonFieldError(field, violation.getMessage()));
+    }
+
+    // у наших DTO поля плоские, путь состоит из одного узла
+    private static String field(Path path) {
+        Iterator<Path.Node> nodes = path.iterator();
+        Path.Node node = nodes.next();
+        return nodes.hasNext() ? path.toString() : node.getName();
+    }
+
+    private static String buildMessage(List<PersonFieldError> errors) {
+        StringBuilder errorMessage = new StringBuilder();
+        for (PersonFieldError error : errors) {
+            errorMessage.append(error.getField())
+                    .append(" - ").append(error.getMessage())
+                    .append(";");
+        }
+        return errorMessage.toString();
+    }
+}
@@ -0,0 +1,10 @@
+package com.timgapps.springcourse.FirstRestApp.util;
+
+// человека успели изменить или удалить с другой версией (ответ 409 Conflict)
+// без стека вызовов (см. PersonNotFoundException)
+public class PersonVersionConflictException extends RuntimeException {
+
+    public PersonVersionConflictException() {
+        super(null, null, false, false);
+    }
+}
@@ -0,0 +1,11 @@
+-- таблица людей, на уже существующей базе эта миграция пропускается (spring.flyway.baseline-on-migrate)
+CREATE TABLE IF NOT EXISTS Person
+(
+    id          INT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    name        VARCHAR(30)  NOT NULL,
+    age         INT          NOT NULL CHECK (age >= 0),
+    email       VARCHAR(255) NOT NULL,
+    created_at  TIMESTAMP,
+    updated_at  TIMESTAMP,
+    created_who VARCHAR(100)
+);
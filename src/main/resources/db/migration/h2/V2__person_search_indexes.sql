@@ -0,0 +1,6 @@
+-- индексы для GET /people/search (вариант для H2, в нем нет text_pattern_ops)
+CREATE INDEX IF NOT EXISTS person_name_prefix_idx ON Person (name);
+CREATE INDEX IF NOT EXISTS person_email_idx ON Person (email);
+CREATE INDEX IF NOT EXISTS person_age_idx ON Person (age);
+CREATE INDEX IF NOT EXISTS person_created_at_idx ON Person (created_at);
+CREATE INDEX IF NOT EXISTS person_updated_at_idx ON Person (updated_at);
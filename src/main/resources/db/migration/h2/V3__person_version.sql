@@ -0,0 +1,2 @@
+-- версия строки для оптимистической блокировки (UPDATE ... WHERE id = ? AND version = ?)
+ALTER TABLE Person ADD COLUMN IF NOT EXISTS version INT NOT NULL DEFAULT 0;
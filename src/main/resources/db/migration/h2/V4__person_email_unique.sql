@@ -0,0 +1,6 @@
+-- email уникален: INSERT ... ON CONFLICT DO NOTHING сам отбрасывает дубликаты одним запросом,
+-- без отдельной проверки SELECT перед вставкой; уникальный индекс заменяет обычный person_email_idx
+-- на базе, где дубликаты уже есть, их нужно убрать до миграции, найти их можно так:
+-- SELECT email, count(*) FROM Person GROUP BY email HAVING count(*) > 1
+DROP INDEX IF EXISTS person_email_idx;
+CREATE UNIQUE INDEX IF NOT EXISTS person_email_key ON Person (email);
@@ -0,0 +1,8 @@
+-- индексы для GET /people/search
+-- text_pattern_ops нужен, чтобы поиск по префиксу (name LIKE 'Ив%') шел по индексу при любой collation базы
+CREATE INDEX IF NOT EXISTS person_name_prefix_idx ON Person (name text_pattern_ops);
+CREATE INDEX IF NOT EXISTS person_email_idx ON Person (email);
+CREATE INDEX IF NOT EXISTS person_age_idx ON Person (age);
+CREATE INDEX IF NOT EXISTS person_created_at_idx ON Person (created_at);
+-- max(updated_at) для ETag списка людей
+CREATE INDEX IF NOT EXISTS person_updated_at_idx ON Person (updated_at);
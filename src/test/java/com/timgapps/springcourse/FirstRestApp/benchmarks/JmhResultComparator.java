@@ -0,0 +1,90 @@
+package com.timgapps.springcourse.FirstRestApp.benchmarks;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+// сравнивает результаты JMH (-rf json) с сохраненным baseline и завершается с кодом 1,
+// если какой-нибудь бенчмарк стал медленнее больше чем на threshold процентов
+// запускается профилем benchmarks после самих бенчмарков, если задан -Djmh.baseline=<файл>:
+//   ./mvnw -Pbenchmarks test -Djmh.baseline=benchmarks/baseline.json -Djmh.threshold=10
+// аргументы: текущий результат, порог в процентах, baseline (без baseline сравнение пропускается)
+public class JmhResultComparator {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 3 || args[2].isEmpty()) {
+            System.out.println("No JMH baseline given (-Djmh.baseline), skipping comparison");
+            return;
+        }
+        File current = new File(args[0]);
+        double threshold = Double.parseDouble(args[1]);
+        File baseline = new File(args[2]);
+
+        Map<String, Result> baselineResults = read(baseline);
+        Map<String, Result> currentResults = read(current);
+
+        int regressions = 0;
+        System.out.printf("%-90s %14s %14s %9s%n", "Benchmark", "baseline", "current", "change");
+        for (Map.Entry<String, Result> entry : currentResults.entrySet()) {
+            Result now = entry.getValue();
+            Result before = baselineResults.get(entry.getKey());
+            if (before == null) {
+                System.out.printf("%-90s %14s %14.3f %9s%n", entry.getKey(), "-", now.score, "new");
+                continue;
+            }
+
+            // для режима thrpt больше - лучше, для остальных (avgt, sample, ss) - меньше
+            double change = (now.score - before.score) / before.score * 100;
+            double slowdown = now.higherIsBetter ? -change : change;
+            boolean regression = slowdown > threshold;
+            if (regression) {
+                regressions++;
+            }
+            System.out.printf("%-90s %14.3f %14.3f %+8.1f%% %s%s%n", entry.getKey(), before.score, now.score, change,
+                    now.unit, regression ? "  <-- REGRESSION" : "");
+        }
+
+        if (regressions > 0) {
+            System.out.printf("%d benchmark(s) are more than %.1f%% slower than the baseline%n", regressions, threshold);
+            System.exit(1);
+        }
+        System.out.println("No regressions above " + threshold + "%");
+    }
+
+    // ключ - имя бенчмарка вместе с параметрами, например ...PersonMapperBenchmark.toPerson{mapper=generated}
+    private static Map<String, Result> read(File file) throws IOException {
+        Map<String, Result> results = new LinkedHashMap<>();
+        for (JsonNode node : new ObjectMapper().readTree(file)) {
+            Map<String, String> params = new TreeMap<>();
+            JsonNode paramsNode = node.path("params");
+            for (Iterator<Map.Entry<String, JsonNode>> it = paramsNode.fields(); it.hasNext(); ) {
+                Map.Entry<String, JsonNode> param = it.next();
+                params.put(param.getKey(), param.getValue().asText());
+            }
+            String key = node.get("benchmark").asText() + (params.isEmpty() ? "" : params.toString());
+
+            JsonNode metric = node.get("primaryMetric");
+            results.put(key, new Result(metric.get("score").asDouble(), metric.get("scoreUnit").asText(),
+                    "thrpt".equals(node.get("mode").asText())));
+        }
+        return results;
+    }
+
+    private static class Result {
+        private final double score;
+        private final String unit;
+        private final boolean higherIsBetter;
+
+        Result(double score, String unit, boolean higherIsBetter) {
+            this.score = score;
+            this.unit = unit;
+            this.higherIsBetter = higherIsBetter;
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package com.timgapps.springcourse.FirstRestApp.config;
+
+import com.timgapps.springcourse.FirstRestApp.models.Person;
+import com.timgapps.springcourse.FirstRestApp.services.PeopleService;
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import javax.servlet.http.Cookie;
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.time.Duration;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// чтение из реплики: отдельная база H2, в которой есть человек, которого нет в основной
+@SpringBootTest(properties = {
+        "people.datasource.routing.enabled=true",
+        "people.datasource.routing.replicas[0].url=" + ReplicaRoutingTests.REPLICA_URL,
+        "people.datasource.routing.replicas[0].username=sa",
+        "people.datasource.routing.read-your-writes-window=0s"
+})
+@ActiveProfiles("test")
+class ReplicaRoutingTests {
+
+    static final String REPLICA_URL =
+            "jdbc:h2:mem:replica_db;MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE;DEFAULT_NULL_ORDERING=HIGH;DB_CLOSE_DELAY=-1";
+
+    private static final String MARKER = "Replica only";
+
+    @Autowired
+    private PeopleService peopleService;
+
+    @Autowired
+    private ReplicaRoutingDataSource routingDataSource;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void setUpReplica() {
+        DataSource replica = new DriverManagerDataSource(REPLICA_URL, "sa", "");
+        Flyway.configure().dataSource(replica).locations("classpath:db/migration/h2").load().migrate();
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(replica);
+        jdbcTemplate.update("DELETE FROM Person WHERE name = ?", MARKER);
+        jdbcTemplate.update("INSERT INTO Person (name, age, email) VALUES (?, 40, 'replica@mail.ru')", MARKER);
+        routingDataSource.setReadYourWritesWindow(Duration.ZERO);
+    }
+
+    @Test
+    void readsGoToReplicaAndWritesToPrimary() {
+        assertThat(names(peopleService.findAll())).contains(MARKER);
+
+        Person person = new Person("Primary only", 30);
+        person.setEmail("primary@mail.ru");
+        peopleService.save(person);
+        try {
+            // записано в основную базу, реплика его не видит
+            assertThat(names(peopleService.findAll())).contains(MARKER).doesNotContain("Primary only");
+
+            // в окне read-your-writes после записи этот клиент читает из основной базы, остальные - из реплики
+            routingDataSource.setReadYourWritesWindow(Duration.ofMinutes(1));
+            MockHttpServletResponse written = new MockHttpServletResponse();
+            inRequest(new MockHttpServletRequest(), written, () -> {
+                peopleService.update(person.getId(), 0, null, 31, null);
+                assertThat(names(peopleService.findAll())).contains("Primary only").doesNotContain(MARKER);
+            });
+            Cookie lastWrite = written.getCookie(ReplicaRoutingDataSource.LAST_WRITE_COOKIE);
+            assertThat(lastWrite).isNotNull();
+
+            MockHttpServletRequest sameClient = new MockHttpServletRequest();
+            sameClient.setCookies(lastWrite);
+            inRequest(sameClient, new MockHttpServletResponse(), () ->
+                    assertThat(names(peopleService.findAll())).contains("Primary only").doesNotContain(MARKER));
+            inRequest(new MockHttpServletRequest(), new MockHttpServletResponse(), () ->
+                    assertThat(names(peopleService.findAll())).contains(MARKER).doesNotContain("Primary only"));
+        } finally {
+            peopleService.delete(person.getId(), null);
+        }
+    }
+
+    // кэш людей и "версия" таблицы заполняются из основной базы: клиент, который сам не писал, не кладет в кэш
+    // строку из реплики (в ней этого человека нет вовсе)
+    @Test
+    void cacheIsFilledFromPrimaryForOtherClients() {
+        routingDataSource.setReadYourWritesWindow(Duration.ofMinutes(1));
+        Person person = new Person("Primary only", 30);
+        person.setEmail("primary@mail.ru");
+        inRequest(new MockHttpServletRequest(), new MockHttpServletResponse(), () -> peopleService.save(person));
+        try {
+            inRequest(new MockHttpServletRequest(), new MockHttpServletResponse(), () -> {
+                peopleService.update(person.getId(), 0, null, 31, null);
+                peopleService.findStamp();
+            });
+
+            for (int i = 0; i < 2; i++) {
+                inRequest(new MockHttpServletRequest(), new MockHttpServletResponse(), () -> {
+                    assertThat(peopleService.findOne(person.getId()).getAge()).isEqualTo(31);
+                    assertThat(peopleService.findStamp().getCount()).isEqualTo(
+                            jdbcTemplate.queryForObject("SELECT COUNT(*) FROM Person", Long.class));
+                });
+            }
+            // после чтения из основной базы клиент не считается писавшим
+            MockHttpServletResponse read = new MockHttpServletResponse();
+            inRequest(new MockHttpServletRequest(), read, () -> peopleService.findOne(person.getId()));
+            assertThat(read.getCookie(ReplicaRoutingDataSource.LAST_WRITE_COOKIE)).isNull();
+        } finally {
+            peopleService.delete(person.getId(), null);
+        }
+    }
+
+    @Test
+    void unavailableReplicaFallsBackToPrimary() throws Exception {
+        DataSource primary = new DriverManagerDataSource(REPLICA_URL, "sa", "");
+        DataSource unavailable = new DriverManagerDataSource("jdbc:h2:tcp://localhost:1/missing", "sa", "");
+        ReplicaRoutingDataSource dataSource = new ReplicaRoutingDataSource(primary, List.of(unavailable),
+                Duration.ZERO, Duration.ofHours(1));
+        dataSource.afterPropertiesSet();
+
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+        try {
+            try (Connection connection = dataSource.getConnection()) {
+                assertThat(connection.isValid(1)).isTrue();
+                assertThat(dataSource.getHealthyReplicas()).isEmpty();
+            }
+            // с явными учетными данными соединение берется у той же выбранной базы
+            try (Connection connection = dataSource.getConnection("sa", "")) {
+                assertThat(connection.isValid(1)).isTrue();
+            }
+        } finally {
+            TransactionSynchronizationManager.setCurrentTransactionReadOnly(false);
+            dataSource.destroy();
+        }
+    }
+
+    private static void inRequest(MockHttpServletRequest request, MockHttpServletResponse response, Runnable action) {
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request, response));
+        try {
+            action.run();
+        } finally {
+            RequestContextHolder.resetRequestAttributes();
+        }
+    }
+
+    private static List<String> names(List<Person> people) {
+        return people.stream().map(Person::getName).collect(Collectors.toList());
+    }
+}
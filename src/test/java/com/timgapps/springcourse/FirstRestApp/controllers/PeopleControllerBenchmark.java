@@ -0,0 +1,66 @@
+package com.timgapps.springcourse.FirstRestApp.controllers;
+
+import com.timgapps.springcourse.FirstRestApp.dto.PersonDTO;
+import com.timgapps.springcourse.FirstRestApp.util.PersonErrorResponse;
+import com.timgapps.springcourse.FirstRestApp.util.PersonFieldError;
+import com.timgapps.springcourse.FirstRestApp.util.PersonValidator;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.validation.BeanPropertyBindingResult;
+import org.springframework.validation.FieldError;
+import org.springframework.validation.beanvalidation.SpringValidatorAdapter;
+
+import javax.validation.Validation;
+import javax.validation.Validator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// обработка невалидного человека в PeopleController.create:
+// прежний путь (@Valid + BindingResult, сборка строки, исключение со стеком) против PersonValidator
+// запуск: ./mvnw -Pbenchmarks test -Djmh.args="PeopleControllerBenchmark"
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PeopleControllerBenchmark {
+
+    private SpringValidatorAdapter springValidator;
+
+    private PersonValidator personValidator;
+
+    private PersonDTO invalidPerson;
+
+    @Setup
+    public void setUp() {
+        Validator validator = Validation.buildDefaultValidatorFactory().getValidator();
+        springValidator = new SpringValidatorAdapter(validator);
+        personValidator = new PersonValidator(validator);
+
+        invalidPerson = new PersonDTO();
+        invalidPerson.setName("I");
+        invalidPerson.setAge(-1);
+        invalidPerson.setEmail("not an email");
+    }
+
+    @Benchmark
+    public Object bindingResultAndException() {
+        BeanPropertyBindingResult bindingResult = new BeanPropertyBindingResult(invalidPerson, "personDTO");
+        springValidator.validate(invalidPerson, bindingResult);
+
+        StringBuilder errorMessage = new StringBuilder();
+        for (FieldError error : bindingResult.getFieldErrors()) {
+            errorMessage.append(error.getField())
+                    .append(" - ").append(error.getDefaultMessage())
+                    .append(";");
+        }
+        RuntimeException exception = new RuntimeException(errorMessage.toString());
+        return new PersonErrorResponse(exception.getMessage(), System.currentTimeMillis());
+    }
+
+    @Benchmark
+    public Object personValidator() {
+        List<PersonFieldError> errors = personValidator.validate(invalidPerson);
+        return new PersonErrorResponse(personValidator.message(errors), errors, System.currentTimeMillis());
+    }
+}
@@ -0,0 +1,258 @@
+package com.timgapps.springcourse.FirstRestApp.controllers;
+
+import com.timgapps.springcourse.FirstRestApp.models.Person;
+import com.timgapps.springcourse.FirstRestApp.services.PeopleService;
+import com.timgapps.springcourse.FirstRestApp.services.PersonCache;
+import com.timgapps.springcourse.FirstRestApp.util.PersonEmailConflictException;
+import com.timgapps.springcourse.FirstRestApp.util.PersonNotFoundException;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.timgapps.springcourse.FirstRestApp.controllers.PeopleController.APPLICATION_NDJSON_VALUE;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+// HTTP API /people через MockMvc, без ограничения частоты запросов
+@SpringBootTest(properties = "people.rate-limit.enabled=false")
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+class PeopleControllerTests {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private PeopleService peopleService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PersonCache personCache;
+
+    @Test
+    void listIsPagedByLastIdAndStreamedAsNdjson() throws Exception {
+        List<Person> people = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            people.add(save("Page", "page-" + i + "@mail.ru"));
+        }
+        try {
+            int before = people.get(0).getId() - 1;
+            String next = mockMvc.perform(get("/people").param("after", String.valueOf(before)).param("limit", "2"))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$.length()").value(2))
+                    .andExpect(jsonPath("$[0].email").value("page-0@mail.ru"))
+                    .andExpect(jsonPath("$[1].email").value("page-1@mail.ru"))
+                    .andExpect(header().string(HttpHeaders.LINK, "<http://localhost/people?after="
+                            + people.get(1).getId() + "&limit=2>; rel=\"next\""))
+                    .andReturn().getResponse().getHeader(HttpHeaders.LINK);
+
+            // следующая страница начинается сразу после последнего id предыдущей
+            mockMvc.perform(get(next.substring(1, next.indexOf('>'))))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$[0].email").value("page-2@mail.ru"));
+
+            // NDJSON пишется потоком уже после выхода из метода контроллера, по человеку на строку
+            MvcResult started = mockMvc.perform(get("/people").accept(APPLICATION_NDJSON_VALUE)).andReturn();
+            String body = mockMvc.perform(asyncDispatch(started))
+                    .andExpect(status().isOk())
+                    .andExpect(header().string(HttpHeaders.CONTENT_TYPE, APPLICATION_NDJSON_VALUE))
+                    .andReturn().getResponse().getContentAsString();
+            assertThat(body).endsWith("\n");
+            for (String line : body.split("\n")) {
+                assertThat(line).startsWith("{").endsWith("}");
+            }
+            for (Person person : people) {
+                assertThat(body).contains("\"email\":\"" + person.getEmail() + "\"");
+            }
+        } finally {
+            for (Person person : people) {
+                peopleService.delete(person.getId(), null);
+            }
+        }
+    }
+
+    @Test
+    void batchSavesValidPeopleAndReportsTheRestByIndex() throws Exception {
+        try {
+            mockMvc.perform(post("/people/batch")
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .content("[{\"name\": \"Batch\", \"age\": 20, \"email\": \"batch-0@mail.ru\"}," +
+                                    "{\"name\": \"A\", \"age\": 20, \"email\": \"batch-1@mail.ru\"}," +
+                                    "{\"name\": \"Batch\", \"age\": 20, \"email\": \"batch-2@mail.ru\"}," +
+                                    "{\"name\": \"Batch\", \"age\": 20, \"email\": \"batch-0@mail.ru\"}]"))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$.created").value(2))
+                    .andExpect(jsonPath("$.errors.length()").value(2))
+                    .andExpect(jsonPath("$.errors[0].index").value(1))
+                    .andExpect(jsonPath("$.errors[0].message")
+                            .value("name - Name should be between 2 and 30 characters;"))
+                    .andExpect(jsonPath("$.errors[0].errors[0].field").value("name"))
+                    .andExpect(jsonPath("$.errors[1].index").value(3))
+                    .andExpect(jsonPath("$.errors[1].message").value(PersonEmailConflictException.MESSAGE));
+
+            assertThat(findByEmail("batch-0@mail.ru")).hasSize(1);
+            assertThat(findByEmail("batch-1@mail.ru")).isEmpty();
+            assertThat(findByEmail("batch-2@mail.ru")).hasSize(1);
+        } finally {
+            for (String email : List.of("batch-0@mail.ru", "batch-2@mail.ru")) {
+                for (int id : findByEmail(email)) {
+                    peopleService.delete(id, null);
+                }
+            }
+        }
+    }
+
+    @Test
+    void personIsServedFromCacheUntilEvicted() throws Exception {
+        Person person = save("Cached", "cached@mail.ru");
+        try {
+            mockMvc.perform(get("/people/" + person.getId()))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$.name").value("Cached"));
+
+            // строку меняем мимо приложения: пока запись в кэше, ответ берется из него, а не из базы
+            jdbcTemplate.update("UPDATE Person SET name = 'Updated' WHERE id = ?", person.getId());
+            mockMvc.perform(get("/people/" + person.getId()))
+                    .andExpect(jsonPath("$.name").value("Cached"));
+
+            personCache.evict(person.getId());
+            mockMvc.perform(get("/people/" + person.getId()))
+                    .andExpect(jsonPath("$.name").value("Updated"));
+
+            // изменение через API вытесняет человека из кэша само
+            mockMvc.perform(put("/people/" + person.getId())
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .content("{\"name\": \"Put\", \"age\": 31, \"email\": \"cached@mail.ru\", \"version\": 0}"))
+                    .andExpect(status().isNoContent());
+            mockMvc.perform(get("/people/" + person.getId()))
+                    .andExpect(jsonPath("$.name").value("Put"))
+                    .andExpect(jsonPath("$.age").value(31))
+                    .andExpect(jsonPath("$.version").value(1));
+        } finally {
+            peopleService.delete(person.getId(), null);
+        }
+        mockMvc.perform(get("/people/" + person.getId()))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    void unchangedPersonAndListAreNotModified() throws Exception {
+        Person person = save("Etag", "etag@mail.ru");
+        try {
+            String etag = mockMvc.perform(get("/people/" + person.getId()))
+                    .andExpect(status().isOk())
+                    .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+            assertThat(etag).contains("\"" + person.getId() + "-");
+            mockMvc.perform(get("/people/" + person.getId()).header(HttpHeaders.IF_NONE_MATCH, etag))
+                    .andExpect(status().isNotModified());
+
+            String listEtag = mockMvc.perform(get("/people"))
+                    .andExpect(status().isOk())
+                    .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+            mockMvc.perform(get("/people").header(HttpHeaders.IF_NONE_MATCH, listEtag))
+                    .andExpect(status().isNotModified());
+
+            // после изменения updated_at старый ETag больше не подходит
+            jdbcTemplate.update("UPDATE Person SET updated_at = ? WHERE id = ?",
+                    Timestamp.valueOf(LocalDateTime.now().plusMinutes(1)), person.getId());
+            personCache.evict(person.getId());
+            String updatedEtag = mockMvc.perform(get("/people/" + person.getId())
+                            .header(HttpHeaders.IF_NONE_MATCH, etag))
+                    .andExpect(status().isOk())
+                    .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+            assertThat(updatedEtag).isNotEqualTo(etag);
+            mockMvc.perform(get("/people/" + person.getId()).header(HttpHeaders.IF_NONE_MATCH, updatedEtag))
+                    .andExpect(status().isNotModified());
+
+            // новый ETag приходит сразу в ответе на PUT, по нему можно делать условный GET
+            String putEtag = mockMvc.perform(put("/people/" + person.getId())
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .content("{\"name\": \"Etag\", \"age\": 31, \"email\": \"etag@mail.ru\", \"version\": 0}"))
+                    .andExpect(status().isNoContent())
+                    .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+            mockMvc.perform(get("/people/" + person.getId()).header(HttpHeaders.IF_NONE_MATCH, updatedEtag))
+                    .andExpect(status().isOk())
+                    .andExpect(header().string(HttpHeaders.ETAG, putEtag));
+            mockMvc.perform(get("/people/" + person.getId()).header(HttpHeaders.IF_NONE_MATCH, putEtag))
+                    .andExpect(status().isNotModified());
+        } finally {
+            peopleService.delete(person.getId(), null);
+        }
+    }
+
+    @Test
+    void invalidPersonGetsFieldErrorsWithoutBeingSaved() throws Exception {
+        for (int i = 0; i < 2; i++) {
+            // повторный запрос получает то же сообщение, собранное один раз
+            mockMvc.perform(post("/people")
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .content("{\"name\": \"A\", \"age\": -1, \"email\": \"invalid@mail.ru\"}"))
+                    .andExpect(status().isBadRequest())
+                    .andExpect(jsonPath("$.message").value("age - Age should be greater than 0;" +
+                            "name - Name should be between 2 and 30 characters;"))
+                    .andExpect(jsonPath("$.errors[0].field").value("age"))
+                    .andExpect(jsonPath("$.errors[1].field").value("name"))
+                    .andExpect(jsonPath("$.errors[1].message").value("Name should be between 2 and 30 characters"));
+        }
+        assertThat(findByEmail("invalid@mail.ru")).isEmpty();
+
+        mockMvc.perform(get("/people/" + Integer.MAX_VALUE))
+                .andExpect(status().isNotFound())
+                .andExpect(jsonPath("$.message").value("Person with this id wasn't found!"))
+                .andExpect(jsonPath("$.errors").doesNotExist());
+        // исключение сразу становится ответом 404, стек вызовов у него не заполняется
+        assertThat(new PersonNotFoundException().getStackTrace()).isEmpty();
+    }
+
+    @Test
+    void putRequiresVersion() throws Exception {
+        Person person = save("Put", "put@mail.ru");
+        try {
+            mockMvc.perform(put("/people/" + person.getId())
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .content("{\"name\": \"Put\", \"age\": 31, \"email\": \"put@mail.ru\"}"))
+                    .andExpect(status().isBadRequest())
+                    .andExpect(jsonPath("$.errors[0].field").value("version"));
+
+            mockMvc.perform(put("/people/" + person.getId())
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .content("{\"name\": \"Put\", \"age\": 31, \"email\": \"put@mail.ru\", \"version\": 0}"))
+                    .andExpect(status().isNoContent());
+            assertThat(peopleService.findOne(person.getId()).getAge()).isEqualTo(31);
+        } finally {
+            peopleService.delete(person.getId(), null);
+        }
+    }
+
+    // id людей с этим email
+    private List<Integer> findByEmail(String email) {
+        return jdbcTemplate.queryForList("SELECT id FROM Person WHERE email = ?", Integer.class, email);
+    }
+
+    private Person save(String name, String email) {
+        Person person = new Person(name, 30);
+        person.setEmail(email);
+        peopleService.save(person);
+        return person;
+    }
+}
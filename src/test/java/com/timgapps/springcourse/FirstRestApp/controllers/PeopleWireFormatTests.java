@@ -0,0 +1,95 @@
+package com.timgapps.springcourse.FirstRestApp.controllers;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.fasterxml.jackson.dataformat.smile.databind.SmileMapper;
+import com.timgapps.springcourse.FirstRestApp.dto.PersonDTO;
+import com.timgapps.springcourse.FirstRestApp.models.Person;
+import com.timgapps.springcourse.FirstRestApp.services.PeopleService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// формат списка людей по заголовку Accept (JSON, Smile, CBOR) и сжатие gzip ответа настоящим Tomcat'ом
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = "people.rate-limit.enabled=false")
+@ActiveProfiles("test")
+class PeopleWireFormatTests {
+
+    // больше server.compression.min-response-size, чтобы ответ сжимался
+    private static final int PEOPLE = 60;
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private PeopleService peopleService;
+
+    private final HttpClient client = HttpClient.newHttpClient();
+
+    @Test
+    void listIsNegotiatedAndCompressed() throws Exception {
+        List<Person> people = new ArrayList<>();
+        for (int i = 0; i < PEOPLE; i++) {
+            Person person = new Person("Wire format", 30);
+            person.setEmail("wire-" + i + "@mail.ru");
+            people.add(person);
+        }
+        peopleService.saveAll(people);
+        try {
+            String page = "/people?after=" + (people.get(0).getId() - 1) + "&limit=" + PEOPLE;
+
+            assertPeople(fetch(page, "application/x-jackson-smile", false), "application/x-jackson-smile",
+                    new SmileMapper());
+            assertPeople(fetch(page, "application/cbor", false), "application/cbor", new CBORMapper());
+
+            HttpResponse<byte[]> gzipped = fetch(page, "application/json", true);
+            assertThat(gzipped.headers().firstValue("Content-Encoding")).hasValue("gzip");
+            assertPeople(gzipped, "application/json", new ObjectMapper());
+        } finally {
+            for (Person person : people) {
+                peopleService.delete(person.getId(), null);
+            }
+        }
+    }
+
+    private HttpResponse<byte[]> fetch(String path, String accept, boolean gzip) throws Exception {
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + path))
+                .header("Accept", accept);
+        if (gzip) {
+            request.header("Accept-Encoding", "gzip");
+        }
+        HttpResponse<byte[]> response = client.send(request.build(), HttpResponse.BodyHandlers.ofByteArray());
+        assertThat(response.statusCode()).isEqualTo(200);
+        return response;
+    }
+
+    private static void assertPeople(HttpResponse<byte[]> response, String contentType, ObjectMapper mapper)
+            throws IOException {
+        assertThat(response.headers().firstValue("Content-Type")).hasValueSatisfying(value ->
+                assertThat(value).startsWith(contentType));
+        InputStream body = new ByteArrayInputStream(response.body());
+        if (response.headers().firstValue("Content-Encoding").isPresent()) {
+            body = new GZIPInputStream(body);
+        }
+        PersonDTO[] people = mapper.readValue(body, PersonDTO[].class);
+        assertThat(people).hasSize(PEOPLE);
+        assertThat(people[0].getEmail()).isEqualTo("wire-0@mail.ru");
+        assertThat(people[PEOPLE - 1].getEmail()).isEqualTo("wire-" + (PEOPLE - 1) + "@mail.ru");
+    }
+}
@@ -0,0 +1,51 @@
+package com.timgapps.springcourse.FirstRestApp.dto;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// сериализация списка PersonDTO в JSON, как при ответе на GET /people
+// запуск: ./mvnw -Pbenchmarks test -Djmh.args="PersonDTOSerializationBenchmark"
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PersonDTOSerializationBenchmark {
+
+    @Param({"10", "1000", "10000"})
+    private int size;
+
+    private ObjectWriter listWriter;
+
+    private List<PersonDTO> people;
+
+    @Setup
+    public void setUp() {
+        ObjectMapper objectMapper = new ObjectMapper();
+        listWriter = objectMapper.writerFor(
+                objectMapper.getTypeFactory().constructCollectionType(List.class, PersonDTO.class));
+
+        people = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            PersonDTO personDTO = new PersonDTO();
+            personDTO.setName("Person " + i);
+            personDTO.setAge(20 + i % 50);
+            personDTO.setEmail("person" + i + "@mail.ru");
+            people.add(personDTO);
+        }
+    }
+
+    @Benchmark
+    public void serializeList() throws IOException {
+        // пишем в "никуда", чтобы измерять сериализацию, а не рост буфера
+        listWriter.writeValue(OutputStream.nullOutputStream(), people);
+    }
+}
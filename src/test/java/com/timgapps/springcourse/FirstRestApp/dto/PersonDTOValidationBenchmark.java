@@ -0,0 +1,49 @@
+package com.timgapps.springcourse.FirstRestApp.dto;
+
+import org.openjdk.jmh.annotations.*;
+
+import javax.validation.Validation;
+import javax.validation.Validator;
+import java.util.concurrent.TimeUnit;
+
+// Bean Validation PersonDTO по его аннотациям, как при @Valid в PeopleController.create
+// запуск: ./mvnw -Pbenchmarks test -Djmh.args="PersonDTOValidationBenchmark"
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PersonDTOValidationBenchmark {
+
+    private Validator validator;
+
+    private PersonDTO validPerson;
+
+    private PersonDTO invalidPerson;
+
+    @Setup
+    public void setUp() {
+        validator = Validation.buildDefaultValidatorFactory().getValidator();
+        validPerson = personDTO("Ivan", 25, "ivan@mail.ru");
+        invalidPerson = personDTO("I", -1, "not an email");
+    }
+
+    @Benchmark
+    public Object validateValid() {
+        return validator.validate(validPerson);
+    }
+
+    @Benchmark
+    public Object validateInvalid() {
+        return validator.validate(invalidPerson);
+    }
+
+    private static PersonDTO personDTO(String name, int age, String email) {
+        PersonDTO personDTO = new PersonDTO();
+        personDTO.setName(name);
+        personDTO.setAge(age);
+        personDTO.setEmail(email);
+        return personDTO;
+    }
+}
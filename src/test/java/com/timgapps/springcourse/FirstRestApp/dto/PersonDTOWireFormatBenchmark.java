@@ -0,0 +1,101 @@
+package com.timgapps.springcourse.FirstRestApp.dto;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.fasterxml.jackson.dataformat.smile.databind.SmileMapper;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+// сериализация списка PersonDTO в разные форматы ответа GET /people: время сериализации (score)
+// и размер ответа в байтах (печатается в вывод бенчмарка строкой "wire bytes")
+// запуск: ./mvnw -Pbenchmarks test -Djmh.args="PersonDTOWireFormatBenchmark"
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PersonDTOWireFormatBenchmark {
+
+    @Param({"json", "smile", "cbor"})
+    private String format;
+
+    // gzip как у Tomcat при server.compression.enabled=true
+    @Param({"false", "true"})
+    private boolean gzip;
+
+    @Param({"10", "1000", "10000"})
+    private int size;
+
+    private ObjectWriter listWriter;
+
+    private List<PersonDTO> people;
+
+    @Setup
+    public void setUp() throws IOException {
+        ObjectMapper objectMapper;
+        switch (format) {
+            case "smile":
+                objectMapper = new SmileMapper();
+                break;
+            case "cbor":
+                objectMapper = new CBORMapper();
+                break;
+            default:
+                objectMapper = new ObjectMapper();
+        }
+        listWriter = objectMapper.writerFor(
+                objectMapper.getTypeFactory().constructCollectionType(List.class, PersonDTO.class));
+
+        people = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            PersonDTO personDTO = new PersonDTO();
+            personDTO.setName("Person " + i);
+            personDTO.setAge(20 + i % 50);
+            personDTO.setEmail("person" + i + "@mail.ru");
+            people.add(personDTO);
+        }
+
+        CountingOutputStream counter = new CountingOutputStream();
+        write(counter);
+        System.out.printf("%nwire bytes: format=%s gzip=%s size=%d -> %d bytes%n", format, gzip, size, counter.count);
+    }
+
+    @Benchmark
+    public void serializeList() throws IOException {
+        // пишем в "никуда", чтобы измерять сериализацию (и сжатие), а не рост буфера
+        write(OutputStream.nullOutputStream());
+    }
+
+    private void write(OutputStream out) throws IOException {
+        if (gzip) {
+            try (GZIPOutputStream gzipOut = new GZIPOutputStream(out)) {
+                listWriter.writeValue(gzipOut, people);
+            }
+        } else {
+            listWriter.writeValue(out, people);
+        }
+    }
+
+    private static class CountingOutputStream extends OutputStream {
+
+        private long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
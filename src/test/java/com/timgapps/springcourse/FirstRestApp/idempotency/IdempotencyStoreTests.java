@@ -0,0 +1,52 @@
+package com.timgapps.springcourse.FirstRestApp.idempotency;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class IdempotencyStoreTests {
+
+    private final IdempotencyStore store = new IdempotencyStore(100, Duration.ofMinutes(1), new SimpleMeterRegistry());
+
+    private final AtomicInteger calls = new AtomicInteger();
+
+    @Test
+    void retryGetsStoredResponseWithoutRunningAgain() {
+        ResponseEntity<?> first = store.execute("key-1", List.of("Ivan"), this::created);
+        ResponseEntity<?> retry = store.execute("key-1", List.of("Ivan"), this::created);
+
+        assertThat(calls).hasValue(1);
+        assertThat(retry.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(retry.getBody()).isEqualTo(first.getBody());
+        assertThat(retry.getHeaders().getFirst(IdempotencyStore.IDEMPOTENT_REPLAYED)).isEqualTo("true");
+
+        // тот же ключ с другим запросом
+        assertThat(store.execute("key-1", List.of("Petr"), this::created).getStatusCode())
+                .isEqualTo(HttpStatus.UNPROCESSABLE_ENTITY);
+        assertThat(calls).hasValue(1);
+    }
+
+    @Test
+    void inFlightRequestAndServerErrorsAreNotReplayed() {
+        ResponseEntity<?> nested = store.execute("key-2", List.of("Ivan"),
+                () -> store.execute("key-2", List.of("Ivan"), this::created));
+        assertThat(nested.getStatusCode()).isEqualTo(HttpStatus.CONFLICT);
+
+        store.execute("key-3", List.of("Ivan"), () -> ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build());
+        store.execute("key-3", List.of("Ivan"), this::created);
+        assertThat(calls).hasValue(1);
+        assertThat(store.execute("key-3", List.of("Ivan"), this::created).getHeaders()
+                .containsKey(IdempotencyStore.IDEMPOTENT_REPLAYED)).isTrue();
+    }
+
+    private ResponseEntity<?> created() {
+        return ResponseEntity.ok("created " + calls.incrementAndGet());
+    }
+}
@@ -0,0 +1,117 @@
+package com.timgapps.springcourse.FirstRestApp.loadtest;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// нагрузочный тест для сравнения режимов выполнения запросов (people.execution.mode=platform|virtual)
+// приложение запускается отдельно, оба раза с одной и той же базой, например:
+//   java -jar target/FirstRestApp-0.0.1-SNAPSHOT.jar --people.execution.mode=virtual --people.rate-limit.enabled=false
+// затем:
+//   ./mvnw test-compile exec:exec -Dexec.executable=java -Dexec.classpathScope=test \
+//       -Dexec.args="-cp %classpath com.timgapps.springcourse.FirstRestApp.loadtest.PeopleLoadGenerator \
+//       http://localhost:8080 400 30 1000"
+// аргументы: адрес приложения, число одновременных клиентов, длительность в секундах, максимальный id человека
+// каждый десятый запрос идет в /api/sayHello, чтобы было видно, страдают ли от медленной базы "легкие" запросы
+public class PeopleLoadGenerator {
+
+    public static void main(String[] args) throws Exception {
+        String baseUrl = args.length > 0 ? args[0] : "http://localhost:8080";
+        int clients = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 30;
+        int maxId = args.length > 3 ? Integer.parseInt(args[3]) : 1000;
+
+        HttpClient httpClient = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofSeconds(5))
+                .executor(Executors.newFixedThreadPool(Math.max(4, clients / 10)))
+                .build();
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        List<Stats> allStats = new ArrayList<>();
+        ExecutorService clientThreads = Executors.newFixedThreadPool(clients);
+        for (int i = 0; i < clients; i++) {
+            Stats stats = new Stats();
+            allStats.add(stats);
+            clientThreads.execute(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                while (System.nanoTime() < deadline) {
+                    boolean hello = random.nextInt(10) == 0;
+                    String path = hello ? "/api/sayHello" : "/people/" + (1 + random.nextInt(maxId));
+                    HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + path))
+                            .timeout(Duration.ofSeconds(30))
+                            .build();
+                    long start = System.nanoTime();
+                    try {
+                        HttpResponse<Void> response = httpClient.send(request, HttpResponse.BodyHandlers.discarding());
+                        stats.record(hello, System.nanoTime() - start, response.statusCode() >= 500);
+                    } catch (Exception e) {
+                        stats.record(hello, System.nanoTime() - start, true);
+                    }
+                }
+            });
+        }
+        clientThreads.shutdown();
+        clientThreads.awaitTermination(seconds + 60L, TimeUnit.SECONDS);
+
+        Stats total = new Stats();
+        allStats.forEach(total::merge);
+        System.out.printf("clients=%d duration=%ds%n", clients, seconds);
+        total.print("people/{id}", false, seconds);
+        total.print("api/sayHello", true, seconds);
+        System.exit(0);
+    }
+
+    // латентности одного клиента (в наносекундах), отдельно для /people/{id} и /api/sayHello
+    private static class Stats {
+        private long[][] latencies = {new long[1024], new long[1024]};
+        private final int[] counts = new int[2];
+        private final int[] errors = new int[2];
+
+        void record(boolean hello, long nanos, boolean error) {
+            int kind = hello ? 1 : 0;
+            if (counts[kind] == latencies[kind].length) {
+                latencies[kind] = Arrays.copyOf(latencies[kind], counts[kind] * 2);
+            }
+            latencies[kind][counts[kind]++] = nanos;
+            if (error) {
+                errors[kind]++;
+            }
+        }
+
+        void merge(Stats other) {
+            for (int kind = 0; kind < 2; kind++) {
+                for (int i = 0; i < other.counts[kind]; i++) {
+                    record(kind == 1, other.latencies[kind][i], false);
+                }
+                errors[kind] += other.errors[kind];
+            }
+        }
+
+        void print(String name, boolean hello, int seconds) {
+            int kind = hello ? 1 : 0;
+            long[] sorted = Arrays.copyOf(latencies[kind], counts[kind]);
+            Arrays.sort(sorted);
+            System.out.printf("%-14s requests=%d errors=%d throughput=%.1f req/s p50=%.2fms p99=%.2fms max=%.2fms%n",
+                    name, sorted.length, errors[kind], sorted.length / (double) seconds,
+                    percentile(sorted, 0.50), percentile(sorted, 0.99),
+                    sorted.length == 0 ? 0 : sorted[sorted.length - 1] / 1_000_000.0);
+        }
+
+        private static double percentile(long[] sorted, double p) {
+            if (sorted.length == 0) {
+                return 0;
+            }
+            int index = (int) Math.min(sorted.length - 1, Math.ceil(p * sorted.length) - 1);
+            return sorted[Math.max(0, index)] / 1_000_000.0;
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.timgapps.springcourse.FirstRestApp.loadtest;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// время холодного старта: от запуска процесса приложения до первого успешного (200) GET /people/{id}
+// приложение запускается переданной командой несколько раз, например обычный старт и fast-startup с CDS:
+//   ./mvnw -Pcds package -DskipTests && cd target/cds
+//   java -cp ../test-classes com.timgapps.springcourse.FirstRestApp.loadtest.StartupBenchmark \
+//       5 http://localhost:8081/people/1 java -XX:SharedArchiveFile=app.jsa -jar FirstRestApp-0.0.1-SNAPSHOT-cds.jar \
+//       --server.port=8081 --spring.profiles.active=fast-startup
+// (без -XX:SharedArchiveFile и --spring.profiles.active - обычный старт для сравнения)
+// аргументы: число запусков, адрес человека, команда запуска приложения (порт должен совпадать с адресом)
+// если человека нет (404), бенчмарк один раз создает его через POST /people и ждет 200 дальше
+public class StartupBenchmark {
+
+    private static final String PERSON_JSON = "{\"name\":\"Startup\",\"age\":30,\"email\":\"startup@mail.ru\"}";
+
+    public static void main(String[] args) throws Exception {
+        int runs = Integer.parseInt(args[0]);
+        URI personUri = URI.create(args[1]);
+        List<String> command = Arrays.asList(args).subList(2, args.length);
+
+        HttpClient client = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofSeconds(1))
+                .build();
+
+        List<Long> firstResponse = new ArrayList<>();
+        List<Long> firstSuccess = new ArrayList<>();
+        for (int run = 1; run <= runs; run++) {
+            long start = System.nanoTime();
+            Process process = new ProcessBuilder(command)
+                    .redirectErrorStream(true)
+                    .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                    .start();
+            try {
+                long responded = -1;
+                boolean created = false;
+                while (true) {
+                    if (!process.isAlive()) {
+                        throw new IllegalStateException("Application exited with code " + process.exitValue());
+                    }
+                    int status = get(client, personUri);
+                    if (status > 0 && responded < 0) {
+                        responded = System.nanoTime() - start;
+                    }
+                    if (status == 200) {
+                        break;
+                    }
+                    if (status == 404 && !created) {
+                        post(client, personUri.resolve("/people"));
+                        created = true;
+                    } else if (status <= 0) {
+                        Thread.sleep(10);
+                    }
+                }
+                long succeeded = System.nanoTime() - start;
+                firstResponse.add(responded);
+                firstSuccess.add(succeeded);
+                System.out.printf("run %d: first response %d ms, first 200 %d ms%n",
+                        run, TimeUnit.NANOSECONDS.toMillis(responded), TimeUnit.NANOSECONDS.toMillis(succeeded));
+            } finally {
+                process.destroy();
+                if (!process.waitFor(30, TimeUnit.SECONDS)) {
+                    process.destroyForcibly();
+                }
+            }
+        }
+
+        print("first response", firstResponse);
+        print("first 200 GET /people/{id}", firstSuccess);
+    }
+
+    // статус ответа или 0, если приложение еще не слушает порт
+    private static int get(HttpClient client, URI uri) throws InterruptedException {
+        try {
+            return client.send(HttpRequest.newBuilder(uri).GET().build(), HttpResponse.BodyHandlers.discarding())
+                    .statusCode();
+        } catch (ConnectException e) {
+            return 0;
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    private static void post(HttpClient client, URI uri) throws IOException, InterruptedException {
+        client.send(HttpRequest.newBuilder(uri)
+                        .header("Content-Type", "application/json")
+                        .POST(HttpRequest.BodyPublishers.ofString(PERSON_JSON))
+                        .build(),
+                HttpResponse.BodyHandlers.discarding());
+    }
+
+    private static void print(String name, List<Long> times) {
+        List<Long> sorted = new ArrayList<>(times);
+        Collections.sort(sorted);
+        System.out.printf("%-28s min %5d ms   median %5d ms   max %5d ms%n", name,
+                TimeUnit.NANOSECONDS.toMillis(sorted.get(0)),
+                TimeUnit.NANOSECONDS.toMillis(sorted.get(sorted.size() / 2)),
+                TimeUnit.NANOSECONDS.toMillis(sorted.get(sorted.size() - 1)));
+    }
+}
@@ -0,0 +1,70 @@
+package com.timgapps.springcourse.FirstRestApp.mappers;
+
+import com.timgapps.springcourse.FirstRestApp.dto.PersonDTO;
+import com.timgapps.springcourse.FirstRestApp.models.Person;
+import org.mapstruct.factory.Mappers;
+import org.modelmapper.ModelMapper;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// сравнение сгенерированного маппера и ModelMapper на одном объекте и на списке из 10 000 человек
+// запуск: ./mvnw -Pbenchmarks test -Djmh.args="PersonMapperBenchmark"
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PersonMapperBenchmark {
+
+    @Param({"generated", "modelmapper"})
+    private String mapper;
+
+    private PersonMapper personMapper;
+
+    private Person person;
+
+    private PersonDTO personDTO;
+
+    private List<Person> people;
+
+    @Setup
+    public void setUp() {
+        personMapper = "generated".equals(mapper)
+                ? Mappers.getMapper(GeneratedPersonMapper.class)
+                : new ModelMapperPersonMapper(new ModelMapper());
+
+        people = new ArrayList<>(10_000);
+        for (int i = 0; i < 10_000; i++) {
+            Person p = new Person("Person " + i, 20 + i % 50);
+            p.setId(i + 1);
+            p.setEmail("person" + i + "@mail.ru");
+            p.setCreatedAt(LocalDateTime.now());
+            p.setUpdatedAt(LocalDateTime.now());
+            p.setCreatedWho("ADMIN");
+            people.add(p);
+        }
+        person = people.get(0);
+        personDTO = personMapper.toPersonDTO(person);
+    }
+
+    @Benchmark
+    public PersonDTO toPersonDTO() {
+        return personMapper.toPersonDTO(person);
+    }
+
+    @Benchmark
+    public Person toPerson() {
+        return personMapper.toPerson(personDTO);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public List<PersonDTO> toPersonDTOs10k() {
+        return personMapper.toPersonDTOs(people);
+    }
+}
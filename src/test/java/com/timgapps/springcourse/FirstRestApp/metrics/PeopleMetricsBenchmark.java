@@ -0,0 +1,58 @@
+package com.timgapps.springcourse.FirstRestApp.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.prometheus.PrometheusConfig;
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+import static com.timgapps.springcourse.FirstRestApp.metrics.PeopleMetrics.Operation.*;
+
+// накладные расходы инструментирования: один запрос к людям записывает 3-4 таймера
+// (сервис, репозиторий при промахе кэша, маппинг, для списка еще ETag), baseline - System.nanoTime() без записи
+// запуск: ./mvnw -Pbenchmarks test -Djmh.args="PeopleMetricsBenchmark"
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PeopleMetricsBenchmark {
+
+    private PeopleMetrics peopleMetrics;
+
+    @Setup
+    public void setUp() {
+        MeterRegistry meterRegistry = new PrometheusMeterRegistry(PrometheusConfig.DEFAULT);
+        peopleMetrics = new PeopleMetrics(meterRegistry);
+    }
+
+    @Benchmark
+    public long baseline() {
+        long start = System.nanoTime();
+        return System.nanoTime() - start;
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void recordOne() {
+        peopleMetrics.record(SERVICE_FIND_ONE, System.nanoTime());
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void perRequest() {
+        long start = System.nanoTime();
+        peopleMetrics.record(REPOSITORY_FIND_BY_ID, start);
+        peopleMetrics.record(SERVICE_FIND_ONE, start);
+        peopleMetrics.record(CONVERSION_TO_DTO, start);
+        peopleMetrics.record(SERVICE_FIND_STAMP, start);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void perRequestContended() {
+        perRequest();
+    }
+}
@@ -0,0 +1,57 @@
+package com.timgapps.springcourse.FirstRestApp.ratelimit;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class EndpointLimiterTests {
+
+    private static EndpointLimiter limiter(double requestsPerSecond, int burst, int maxConcurrent) {
+        return new EndpointLimiter("test", new RateLimitProperties.Limit(requestsPerSecond, burst, maxConcurrent),
+                1000, Duration.ofMinutes(1), new SimpleMeterRegistry());
+    }
+
+    @Test
+    void allowsBurstPerClientThenAsksToWait() {
+        EndpointLimiter limiter = limiter(1, 3, 0);
+
+        for (int i = 0; i < 3; i++) {
+            assertThat(limiter.tryAcquire("a")).isZero();
+        }
+        long wait = limiter.tryAcquire("a");
+        assertThat(wait).isPositive().isLessThanOrEqualTo(TimeUnit.SECONDS.toNanos(1));
+
+        // у другого клиента свой запас
+        assertThat(limiter.tryAcquire("b")).isZero();
+    }
+
+    @Test
+    void limitCanBeChangedAtRuntime() {
+        EndpointLimiter limiter = limiter(1, 1, 0);
+        assertThat(limiter.tryAcquire("a")).isZero();
+        assertThat(limiter.tryAcquire("a")).isPositive();
+
+        limiter.update(new RateLimitProperties.Limit(0, 1, 0));
+        assertThat(limiter.tryAcquire("a")).isZero();
+    }
+
+    @Test
+    void capsConcurrentRequests() {
+        EndpointLimiter limiter = limiter(0, 1, 2);
+
+        assertThat(limiter.tryEnter()).isTrue();
+        assertThat(limiter.tryEnter()).isTrue();
+        assertThat(limiter.tryEnter()).isFalse();
+
+        limiter.exit();
+        assertThat(limiter.tryEnter()).isTrue();
+
+        limiter.update(new RateLimitProperties.Limit(0, 1, 3));
+        assertThat(limiter.tryEnter()).isTrue();
+        assertThat(limiter.getInFlight()).isEqualTo(3);
+    }
+}
@@ -0,0 +1,53 @@
+package com.timgapps.springcourse.FirstRestApp.ratelimit;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+// по HTTP лимиты только читаются, меняются через JMX
+@SpringBootTest(properties = "spring.jmx.enabled=true")
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+class RateLimitEndpointTests {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private MBeanServer mBeanServer;
+
+    @Autowired
+    private RateLimiters rateLimiters;
+
+    @Test
+    void limitsAreReadOnlyOverHttpAndChangedOverJmx() throws Exception {
+        mockMvc.perform(get("/actuator/ratelimits"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.limits.batch.burst").value(2));
+        mockMvc.perform(post("/actuator/ratelimits/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"burst\": 100}"))
+                .andExpect(status().is4xxClientError());
+        assertThat(rateLimiters.getLimits().get("batch").getBurst()).isEqualTo(2);
+
+        mBeanServer.invoke(new ObjectName("org.springframework.boot:type=Endpoint,name=Ratelimits"), "configure",
+                new Object[]{"batch", null, 5, null},
+                new String[]{String.class.getName(), Double.class.getName(), Integer.class.getName(),
+                        Integer.class.getName()});
+        assertThat(rateLimiters.getLimits().get("batch").getBurst()).isEqualTo(5);
+        assertThat(rateLimiters.getLimits().get("batch").getRequestsPerSecond()).isEqualTo(1);
+    }
+}
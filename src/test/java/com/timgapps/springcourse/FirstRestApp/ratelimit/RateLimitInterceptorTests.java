@@ -0,0 +1,95 @@
+package com.timgapps.springcourse.FirstRestApp.ratelimit;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.method.HandlerMethod;
+
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RateLimitInterceptorTests {
+
+    private final RateLimitInterceptor interceptor;
+
+    private final HandlerMethod handler;
+
+    private final HandlerMethod bulkheadHandler;
+
+    RateLimitInterceptorTests() throws NoSuchMethodException {
+        RateLimitProperties properties = new RateLimitProperties();
+        properties.getEndpoints().put("test", new RateLimitProperties.Limit(1, 1, 0));
+        properties.getEndpoints().put("bulkhead", new RateLimitProperties.Limit(1, 1, 1));
+        interceptor = new RateLimitInterceptor(new RateLimiters(properties, new SimpleMeterRegistry()),
+                new ObjectMapper(), "X-API-Key", Set.of("known"));
+        handler = new HandlerMethod(new Controller(), Controller.class.getMethod("limited"));
+        bulkheadHandler = new HandlerMethod(new Controller(), Controller.class.getMethod("bulkhead"));
+    }
+
+    @Test
+    void unknownApiKeysShareTheLimitOfTheirAddress() throws Exception {
+        assertThat(preHandle("random-1")).isEqualTo(200);
+        assertThat(preHandle("random-2")).isEqualTo(429);
+        assertThat(preHandle(null)).isEqualTo(429);
+
+        // известный ключ - отдельный клиент со своим запасом
+        assertThat(preHandle("known")).isEqualTo(200);
+        assertThat(preHandle("known")).isEqualTo(429);
+    }
+
+    @Test
+    void requestRejectedByConcurrencyCapKeepsItsRateToken() throws Exception {
+        MockHttpServletRequest running = request("10.0.0.1");
+        MockHttpServletResponse runningResponse = new MockHttpServletResponse();
+        assertThat(interceptor.preHandle(running, runningResponse, bulkheadHandler)).isTrue();
+
+        // единственное место занято: отказ не тратит запас другого клиента
+        MockHttpServletResponse rejected = new MockHttpServletResponse();
+        assertThat(interceptor.preHandle(request("10.0.0.2"), rejected, bulkheadHandler)).isFalse();
+        assertThat(rejected.getStatus()).isEqualTo(429);
+        interceptor.afterCompletion(running, runningResponse, bulkheadHandler, null);
+
+        MockHttpServletRequest retried = request("10.0.0.2");
+        MockHttpServletResponse retriedResponse = new MockHttpServletResponse();
+        assertThat(interceptor.preHandle(retried, retriedResponse, bulkheadHandler)).isTrue();
+        interceptor.afterCompletion(retried, retriedResponse, bulkheadHandler, null);
+
+        // отказ по частоте освобождает занятое место
+        assertThat(interceptor.preHandle(request("10.0.0.2"), new MockHttpServletResponse(), bulkheadHandler))
+                .isFalse();
+        assertThat(interceptor.preHandle(request("10.0.0.3"), new MockHttpServletResponse(), bulkheadHandler))
+                .isTrue();
+    }
+
+    private static MockHttpServletRequest request(String remoteAddr) {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/people");
+        request.setRemoteAddr(remoteAddr);
+        return request;
+    }
+
+    private int preHandle(String apiKey) throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/people");
+        if (apiKey != null) {
+            request.addHeader("X-API-Key", apiKey);
+        }
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        if (interceptor.preHandle(request, response, handler)) {
+            interceptor.afterCompletion(request, response, handler, null);
+        }
+        return response.getStatus();
+    }
+
+    static class Controller {
+
+        @RateLimited("test")
+        public void limited() {
+        }
+
+        @RateLimited("bulkhead")
+        public void bulkhead() {
+        }
+    }
+}
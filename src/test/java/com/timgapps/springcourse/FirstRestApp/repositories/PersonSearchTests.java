@@ -0,0 +1,116 @@
+package com.timgapps.springcourse.FirstRestApp.repositories;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.read.ListAppender;
+import com.timgapps.springcourse.FirstRestApp.config.SampledSqlLogger;
+import com.timgapps.springcourse.FirstRestApp.models.Person;
+import com.timgapps.springcourse.FirstRestApp.services.PeopleService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.timgapps.springcourse.FirstRestApp.repositories.PersonSpecifications.*;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.data.jpa.domain.Specification.where;
+
+// поиск людей на встроенной H2 (режим совместимости с PostgreSQL) со схемой из миграций Flyway
+@SpringBootTest(properties = "people.sql-log.sample-rate=1")
+@ActiveProfiles("test")
+class PersonSearchTests {
+
+    private static final int PAGE = 10;
+
+    @Autowired
+    private PeopleService peopleService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void fillPeople() {
+        Integer count = jdbcTemplate.queryForObject("SELECT count(*) FROM Person", Integer.class);
+        if (count != null && count > 0) {
+            return;
+        }
+        List<Person> people = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            Person person = new Person("Person " + i, i % 80);
+            person.setEmail("person" + i + "@mail.ru");
+            people.add(person);
+        }
+        peopleService.saveAll(people);
+    }
+
+    // EXPLAIN запросов, которые строит сам Hibernate, с теми же значениями параметров
+    // (символ экранирования LIKE Hibernate тоже передает параметром, LIMIT - последний)
+    @Test
+    void searchQueriesUseIndexes() {
+        assertUsesIndex(where(nameStartsWith("Person 1")), "person_name_prefix_idx", "Person 1%", "\\", PAGE);
+        assertUsesIndex(where(emailEquals("person1@mail.ru")), "person_email_key", "person1@mail.ru", PAGE);
+        assertUsesIndex(where(ageBetween(20, 30)), "person_age_idx", 20, 30, PAGE);
+        LocalDateTime from = LocalDateTime.of(2020, 1, 1, 0, 0);
+        LocalDateTime to = from.plusYears(1);
+        assertUsesIndex(createdBetween(from, to), "person_created_at_idx",
+                Timestamp.valueOf(from), Timestamp.valueOf(to), PAGE);
+    }
+
+    @Test
+    void searchFiltersSortsAndLimits() {
+        List<Person> found = peopleService.search(
+                where(nameStartsWith("Person 1")).and(ageBetween(10, 20)),
+                Sort.by(Sort.Direction.DESC, "age").and(Sort.by("id")), 0, 5);
+
+        assertThat(found).hasSize(5);
+        assertThat(found).allSatisfy(person -> {
+            assertThat(person.getName()).startsWith("Person 1");
+            assertThat(person.getAge()).isBetween(10, 20);
+        });
+        assertThat(found).isSortedAccordingTo((a, b) -> Integer.compare(b.getAge(), a.getAge()));
+
+        assertThat(peopleService.search(where(emailEquals("person7@mail.ru")), Sort.by("id"), 0, 10))
+                .extracting(Person::getName)
+                .containsExactly("Person 7");
+    }
+
+    // сортировка по умолчанию у GET /people/search - по id
+    private void assertUsesIndex(Specification<Person> specification, String index, Object... parameters) {
+        String sql = generatedSql(() -> peopleService.search(specification, Sort.by("id"), 0, PAGE));
+        String plan = jdbcTemplate.queryForObject("EXPLAIN " + sql, String.class, parameters);
+        assertThat(plan).as(plan).containsIgnoringCase(index).doesNotContainIgnoringCase("tableScan");
+    }
+
+    // SQL, который Hibernate передал в StatementInspector (SampledSqlLogger пишет его в свой логгер)
+    private static String generatedSql(Runnable action) {
+        Logger logger = (Logger) LoggerFactory.getLogger(SampledSqlLogger.LOGGER_NAME);
+        ListAppender<ILoggingEvent> appender = new ListAppender<>();
+        appender.start();
+        Level level = logger.getLevel();
+        boolean additive = logger.isAdditive();
+        logger.setLevel(Level.INFO);
+        logger.setAdditive(false);
+        logger.detachAndStopAllAppenders();
+        logger.addAppender(appender);
+        try {
+            action.run();
+        } finally {
+            logger.detachAppender(appender);
+            logger.setLevel(level);
+            logger.setAdditive(additive);
+        }
+        assertThat(appender.list).hasSize(1);
+        return appender.list.get(0).getFormattedMessage();
+    }
+}
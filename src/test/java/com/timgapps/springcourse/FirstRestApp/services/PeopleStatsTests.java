@@ -0,0 +1,76 @@
+package com.timgapps.springcourse.FirstRestApp.services;
+
+import com.timgapps.springcourse.FirstRestApp.models.Person;
+import com.timgapps.springcourse.FirstRestApp.util.PeopleStatsResponse;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// агрегаты по людям меняются при записи и совпадают с базой после сверки
+@SpringBootTest
+@ActiveProfiles("test")
+class PeopleStatsTests {
+
+    @Autowired
+    private PeopleService peopleService;
+
+    @Autowired
+    private PeopleStats peopleStats;
+
+    @Test
+    void statsFollowWritesAndMatchDatabaseAfterReconcile() {
+        peopleStats.reconcile();
+        PeopleStatsResponse before = peopleService.getStats();
+
+        Person person = new Person("Stats", 42);
+        person.setEmail("stats@mail.ru");
+        peopleService.save(person);
+        try {
+            PeopleStatsResponse created = peopleService.getStats();
+            assertThat(created.getTotal()).isEqualTo(before.getTotal() + 1);
+            assertThat(ageCount(created, 40)).isEqualTo(ageCount(before, 40) + 1);
+            assertThat(today(created)).isEqualTo(today(before) + 1);
+
+            // сверка с базой дает те же числа
+            peopleStats.reconcile();
+            PeopleStatsResponse reconciled = peopleService.getStats();
+            assertThat(reconciled.getTotal()).isEqualTo(created.getTotal());
+            assertThat(ageCount(reconciled, 40)).isEqualTo(ageCount(created, 40));
+            assertThat(today(reconciled)).isEqualTo(today(created));
+            assertThat(reconciled.getReconciledAt()).isNotNull();
+
+            // смена возраста переносит человека в другую корзину без сверки
+            peopleService.update(person.getId(), 0, null, 55, null);
+            PeopleStatsResponse updated = peopleService.getStats();
+            assertThat(ageCount(updated, 40)).isEqualTo(ageCount(before, 40));
+            assertThat(ageCount(updated, 50)).isEqualTo(ageCount(before, 50) + 1);
+            assertThat(updated.getReconciledAt()).isEqualTo(reconciled.getReconciledAt());
+        } finally {
+            peopleService.delete(person.getId(), null);
+        }
+
+        // удаление тоже учитывается без сверки: все числа снова как до создания
+        PeopleStatsResponse deleted = peopleService.getStats();
+        assertThat(deleted.getTotal()).isEqualTo(before.getTotal());
+        assertThat(ageCount(deleted, 50)).isEqualTo(ageCount(before, 50));
+        assertThat(today(deleted)).isEqualTo(today(before));
+    }
+
+    private static long ageCount(PeopleStatsResponse stats, int from) {
+        return stats.getAges().stream().filter(bucket -> bucket.getFrom() == from).findFirst()
+                .orElseThrow().getCount();
+    }
+
+    private static long today(PeopleStatsResponse stats) {
+        List<PeopleStatsResponse.DayCount> days = stats.getCreatedPerDay();
+        PeopleStatsResponse.DayCount last = days.get(days.size() - 1);
+        assertThat(last.getDate()).isEqualTo(LocalDate.now());
+        return last.getCount();
+    }
+}
@@ -0,0 +1,103 @@
+package com.timgapps.springcourse.FirstRestApp.services;
+
+import com.timgapps.springcourse.FirstRestApp.models.Person;
+import com.timgapps.springcourse.FirstRestApp.repositories.PeopleStamp;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// evict, пришедший во время загрузки из базы, не теряется
+class PersonCacheTests {
+
+    private static final int ID = 7;
+
+    private static PersonCache cache() {
+        return new PersonCache(true, 100, Duration.ofMinutes(1), 100, Duration.ofMinutes(1),
+                Duration.ofMinutes(1), new SimpleMeterRegistry());
+    }
+
+    @Test
+    void missingPersonIsNotRememberedIfEvictedDuringLoad() throws Exception {
+        PersonCache cache = cache();
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        // загрузка прочитала "нет такого" до коммита, человека создают, пока она не вернулась
+        Thread reader = new Thread(() -> cache.get(ID, id -> {
+            loading.countDown();
+            await(release);
+            return Optional.empty();
+        }));
+        reader.start();
+        assertThat(loading.await(5, TimeUnit.SECONDS)).isTrue();
+
+        Thread evictor = new Thread(() -> cache.evict(ID));
+        evictor.start();
+        // evict ждет окончания загрузки на блокировке ключа в Caffeine
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (evictor.getState() != Thread.State.BLOCKED && evictor.isAlive() && System.nanoTime() < deadline) {
+            Thread.onSpinWait();
+        }
+        release.countDown();
+        reader.join(5000);
+        evictor.join(5000);
+
+        Person person = new Person("Created", 30);
+        assertThat(cache.get(ID, id -> Optional.of(person))).containsSame(person);
+    }
+
+    @Test
+    void stampIsNotRememberedIfEvictedDuringLoad() {
+        PersonCache cache = cache();
+        AtomicInteger loads = new AtomicInteger();
+
+        PeopleStamp stale = cache.getStamp(() -> {
+            loads.incrementAndGet();
+            // запись коммитится и сбрасывает "версию", пока загрузка еще не вернулась
+            cache.evict(ID);
+            return stamp(1);
+        });
+        assertThat(stale.getCount()).isEqualTo(1);
+
+        PeopleStamp fresh = cache.getStamp(() -> {
+            loads.incrementAndGet();
+            return stamp(2);
+        });
+        assertThat(fresh.getCount()).isEqualTo(2);
+        assertThat(loads).hasValue(2);
+
+        // без evict во время загрузки "версия" запоминается
+        assertThat(cache.getStamp(() -> stamp(3)).getCount()).isEqualTo(2);
+    }
+
+    private static PeopleStamp stamp(long count) {
+        LocalDateTime lastUpdated = LocalDateTime.now();
+        return new PeopleStamp() {
+            @Override
+            public long getCount() {
+                return count;
+            }
+
+            @Override
+            public LocalDateTime getLastUpdated() {
+                return lastUpdated;
+            }
+        };
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
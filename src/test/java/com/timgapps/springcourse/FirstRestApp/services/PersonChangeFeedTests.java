@@ -0,0 +1,169 @@
+package com.timgapps.springcourse.FirstRestApp.services;
+
+import com.timgapps.springcourse.FirstRestApp.models.Person;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.io.BufferedReader;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// лента изменений GET /people/changes через настоящее HTTP соединение:
+// новые события, продолжение по Last-Event-ID из буфера и чтение пропущенного из базы
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = {"people.changes.heartbeat=200ms", "people.changes.replay-page-size=2",
+                "people.rate-limit.enabled=false"})
+@ActiveProfiles("test")
+class PersonChangeFeedTests {
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private PeopleService peopleService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private final HttpClient client = HttpClient.newHttpClient();
+
+    @Test
+    void streamsChangesAndResumesFromLastEventId() throws Exception {
+        Person person = new Person("Changes", 25);
+        person.setEmail("changes@mail.ru");
+
+        List<String[]> live;
+        try (BufferedReader stream = open(null)) {
+            peopleService.save(person);
+            peopleService.update(person.getId(), 0, null, 26, null);
+            live = readEvents(stream, 2);
+        }
+        try {
+            assertThat(live.get(0)[1]).isEqualTo("CREATED");
+            assertThat(live.get(0)[2]).contains("\"id\":" + person.getId()).contains("\"version\":0");
+            assertThat(live.get(1)[1]).isEqualTo("UPDATED");
+            assertThat(live.get(1)[2]).contains("\"version\":1");
+            assertThat(live.get(1)[0]).endsWith(":" + person.getId());
+
+            // событие еще в буфере: после CREATED приходит UPDATED, и новые события продолжают приходить
+            try (BufferedReader stream = open(live.get(0)[0])) {
+                assertThat(readEvents(stream, 1).get(0)[0]).isEqualTo(live.get(1)[0]);
+            }
+
+            // смещения нет в буфере: изменения дочитываются из базы, человек приходит в текущем состоянии
+            try (BufferedReader stream = open("0:0")) {
+                String id = ":" + person.getId();
+                String[] replayed;
+                do {
+                    replayed = readEvents(stream, 1).get(0);
+                } while (!replayed[0].endsWith(id));
+                assertThat(replayed[1]).isEqualTo("UPDATED");
+                assertThat(replayed[2]).contains("\"version\":1");
+            }
+        } finally {
+            peopleService.delete(person.getId(), null);
+        }
+    }
+
+    @Test
+    void replaysNotUpdatedPersonAsCreated() throws Exception {
+        Person person = new Person("Created", 30);
+        person.setEmail("created@mail.ru");
+        peopleService.save(person);
+        try (BufferedReader stream = open("0:0")) {
+            String id = ":" + person.getId();
+            String[] replayed;
+            do {
+                replayed = readEvents(stream, 1).get(0);
+            } while (!replayed[0].endsWith(id));
+            assertThat(replayed[1]).isEqualTo("CREATED");
+        } finally {
+            peopleService.delete(person.getId(), null);
+        }
+    }
+
+    @Test
+    void replaysPeopleChangedAtTheSameTimeOnce() throws Exception {
+        List<Person> people = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            Person person = new Person("Same time", 40);
+            person.setEmail("same-time-" + i + "@mail.ru");
+            peopleService.save(person);
+            people.add(person);
+        }
+        // раньше всех остальных строк и больше людей, чем в одной странице чтения из базы
+        LocalDateTime updatedAt = LocalDateTime.of(2001, 1, 1, 0, 0, 0, 123_456_000);
+        jdbcTemplate.update("UPDATE Person SET updated_at = ? WHERE email LIKE 'same-time-%'",
+                Timestamp.valueOf(updatedAt));
+        try (BufferedReader stream = open("0:0")) {
+            // все трое по порядку id, без повторного чтения той же страницы
+            List<String[]> replayed = readEvents(stream, 3);
+            for (int i = 0; i < 3; i++) {
+                assertThat(replayed.get(i)[0]).endsWith(":" + people.get(i).getId());
+            }
+        } finally {
+            for (Person person : people) {
+                peopleService.delete(person.getId(), null);
+            }
+        }
+    }
+
+    private BufferedReader open(String lastEventId) throws Exception {
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/people/changes"))
+                .header("Accept", "text/event-stream");
+        if (lastEventId != null) {
+            request.header("Last-Event-ID", lastEventId);
+        }
+        CompletableFuture<HttpResponse<InputStream>> response =
+                client.sendAsync(request.build(), HttpResponse.BodyHandlers.ofInputStream());
+        HttpResponse<InputStream> opened = response.get(10, TimeUnit.SECONDS);
+        assertThat(opened.statusCode()).isEqualTo(200);
+        return new BufferedReader(new InputStreamReader(opened.body(), StandardCharsets.UTF_8));
+    }
+
+    // события в виде {id, event, data}, комментарии-heartbeat пропускаются
+    private static List<String[]> readEvents(BufferedReader stream, int count) throws Exception {
+        CompletableFuture<List<String[]>> events = CompletableFuture.supplyAsync(() -> {
+            List<String[]> result = new ArrayList<>();
+            String[] event = new String[3];
+            try {
+                String line;
+                while (result.size() < count && (line = stream.readLine()) != null) {
+                    if (line.startsWith("id:")) {
+                        event[0] = line.substring(3);
+                    } else if (line.startsWith("event:")) {
+                        event[1] = line.substring(6);
+                    } else if (line.startsWith("data:")) {
+                        event[2] = line.substring(5);
+                    } else if (line.isEmpty() && event[0] != null) {
+                        result.add(event);
+                        event = new String[3];
+                    }
+                }
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+            return result;
+        });
+        List<String[]> result = events.get(10, TimeUnit.SECONDS);
+        assertThat(result).hasSize(count);
+        return result;
+    }
+}
@@ -0,0 +1,78 @@
+package com.timgapps.springcourse.FirstRestApp.services;
+
+import com.timgapps.springcourse.FirstRestApp.models.Person;
+import com.timgapps.springcourse.FirstRestApp.util.PersonEmailConflictException;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+// человек с уже занятым email отбрасывается самим INSERT ... ON CONFLICT DO NOTHING,
+// а изменение email на занятый - ошибка уникального индекса, которая становится PersonEmailConflictException
+@SpringBootTest
+@ActiveProfiles("test")
+class PersonEmailConflictTests {
+
+    @Autowired
+    private PeopleService peopleService;
+
+    @Test
+    void duplicateEmailIsRejectedOnSaveAndSaveAll() {
+        List<Person> saved = new ArrayList<>();
+        try {
+            Person first = person("Unique", "unique@mail.ru");
+            peopleService.save(first);
+            saved.add(first);
+            assertThat(first.getId()).isPositive();
+
+            assertThatThrownBy(() -> peopleService.save(person("Duplicate", "unique@mail.ru")))
+                    .isInstanceOf(PersonEmailConflictException.class);
+
+            // занятый в базе email и повтор email внутри самого списка
+            Person taken = person("Taken", "unique@mail.ru");
+            Person fresh = person("Fresh", "fresh@mail.ru");
+            Person repeated = person("Repeated", "fresh@mail.ru");
+            List<Person> conflicts = peopleService.saveAll(List.of(taken, fresh, repeated));
+            saved.add(fresh);
+
+            assertThat(conflicts).containsExactly(taken, repeated);
+            assertThat(fresh.getId()).isPositive();
+            assertThat(peopleService.findOne(fresh.getId()).getName()).isEqualTo("Fresh");
+        } finally {
+            for (Person person : saved) {
+                peopleService.delete(person.getId(), null);
+            }
+        }
+    }
+
+    @Test
+    void changingEmailToATakenOneIsAConflict() {
+        Person first = person("First", "first-taken@mail.ru");
+        Person second = person("Second", "second-taken@mail.ru");
+        peopleService.save(first);
+        peopleService.save(second);
+        try {
+            assertThatThrownBy(() -> peopleService.update(second.getId(), 0, null, null, "first-taken@mail.ru"))
+                    .isInstanceOf(PersonEmailConflictException.class);
+            assertThat(peopleService.findOne(second.getId()).getEmail()).isEqualTo("second-taken@mail.ru");
+
+            peopleService.update(second.getId(), 0, null, null, "second-free@mail.ru");
+            assertThat(peopleService.findOne(second.getId()).getEmail()).isEqualTo("second-free@mail.ru");
+        } finally {
+            peopleService.delete(first.getId(), null);
+            peopleService.delete(second.getId(), null);
+        }
+    }
+
+    private static Person person(String name, String email) {
+        Person person = new Person(name, 30);
+        person.setEmail(email);
+        return person;
+    }
+}
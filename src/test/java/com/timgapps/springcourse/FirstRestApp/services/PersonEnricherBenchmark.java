@@ -0,0 +1,33 @@
+package com.timgapps.springcourse.FirstRestApp.services;
+
+import com.timgapps.springcourse.FirstRestApp.models.Person;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+// заполнение серверных полей человека перед сохранением (PersonEnricher.enrich)
+// запуск: ./mvnw -Pbenchmarks test -Djmh.args="PersonEnricherBenchmark"
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PersonEnricherBenchmark {
+
+    private PersonEnricher personEnricher;
+
+    private Person person;
+
+    @Setup
+    public void setUp() {
+        personEnricher = new PersonEnricher();
+        person = new Person("Ivan", 25);
+    }
+
+    @Benchmark
+    public Person enrich() {
+        personEnricher.enrich(person);
+        return person;
+    }
+}
@@ -0,0 +1,98 @@
+package com.timgapps.springcourse.FirstRestApp.services;
+
+import com.timgapps.springcourse.FirstRestApp.models.Person;
+import com.timgapps.springcourse.FirstRestApp.util.PersonIngestStatus;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.timgapps.springcourse.FirstRestApp.util.PersonIngestStatus.State.WRITTEN;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+// асинхронное создание людей: POST /people отвечает 202, человек записывается в базу потоком записи,
+// а при остановке очередь дописывается до конца и новые люди не принимаются
+@SpringBootTest(properties = {"people.ingest.mode=async", "people.rate-limit.enabled=false"})
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+class PersonIngestQueueTests {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private PersonIngestQueue ingestQueue;
+
+    @Autowired
+    private PeopleService peopleService;
+
+    @Test
+    void acceptedPersonIsWrittenInBackground() throws Exception {
+        String location = mockMvc.perform(post("/people")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"name\": \"Async\", \"age\": 30, \"email\": \"async@mail.ru\"}"))
+                .andExpect(status().isAccepted())
+                .andExpect(jsonPath("$.state").value("QUEUED"))
+                .andReturn().getResponse().getHeader(HttpHeaders.LOCATION);
+        assertThat(location).startsWith("http://localhost/people/ingest/");
+
+        String trackingId = location.substring(location.lastIndexOf('/') + 1);
+        PersonIngestStatus status = awaitWritten(trackingId);
+        try {
+            mockMvc.perform(get(location))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$.state").value("WRITTEN"))
+                    .andExpect(jsonPath("$.personId").value(status.getPersonId()));
+            assertThat(peopleService.findOne(status.getPersonId()).getEmail()).isEqualTo("async@mail.ru");
+        } finally {
+            peopleService.delete(status.getPersonId(), null);
+        }
+    }
+
+    // останавливает очередь, поэтому контекст после теста не переиспользуется
+    @Test
+    @DirtiesContext
+    void stopWritesQueuedPeopleAndRejectsNewOnes() throws Exception {
+        List<PersonIngestStatus> queued = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            Person person = new Person("Stop", 30);
+            person.setEmail("stop-" + i + "@mail.ru");
+            queued.add(ingestQueue.submit(person));
+        }
+
+        ingestQueue.stop();
+
+        Person late = new Person("Late", 30);
+        late.setEmail("late@mail.ru");
+        assertThat(ingestQueue.submit(late)).isNull();
+
+        for (PersonIngestStatus status : queued) {
+            PersonIngestStatus written = ingestQueue.getStatus(status.getTrackingId());
+            assertThat(written.getState()).isEqualTo(WRITTEN);
+            peopleService.delete(written.getPersonId(), null);
+        }
+    }
+
+    private PersonIngestStatus awaitWritten(String trackingId) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        PersonIngestStatus status = ingestQueue.getStatus(trackingId);
+        while (status.getState() != WRITTEN && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+            status = ingestQueue.getStatus(trackingId);
+        }
+        assertThat(status.getState()).isEqualTo(WRITTEN);
+        return status;
+    }
+}
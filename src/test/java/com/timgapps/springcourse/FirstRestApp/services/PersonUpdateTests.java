@@ -0,0 +1,85 @@
+package com.timgapps.springcourse.FirstRestApp.services;
+
+import com.timgapps.springcourse.FirstRestApp.models.Person;
+import com.timgapps.springcourse.FirstRestApp.util.PersonNotFoundException;
+import com.timgapps.springcourse.FirstRestApp.util.PersonVersionConflictException;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+// изменение и удаление человека с оптимистической блокировкой по версии и очистка кэша после него
+@SpringBootTest
+@ActiveProfiles("test")
+class PersonUpdateTests {
+
+    @Autowired
+    private PeopleService peopleService;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Test
+    void updateChangesOnlyGivenFieldsAndRejectsStaleVersion() {
+        Person person = new Person("Update", 20);
+        person.setEmail("update@mail.ru");
+        peopleService.save(person);
+        int id = person.getId();
+
+        try {
+            peopleService.update(id, 0, null, 21, null);
+
+            Person updated = peopleService.findOne(id);
+            assertThat(updated.getVersion()).isEqualTo(1);
+            assertThat(updated.getAge()).isEqualTo(21);
+            assertThat(updated.getName()).isEqualTo("Update");
+            assertThat(updated.getEmail()).isEqualTo("update@mail.ru");
+
+            // второй клиент все еще видел версию 0
+            assertThatThrownBy(() -> peopleService.update(id, 0, "Stale", null, null))
+                    .isInstanceOf(PersonVersionConflictException.class);
+            assertThatThrownBy(() -> peopleService.delete(id, 0))
+                    .isInstanceOf(PersonVersionConflictException.class);
+            assertThat(peopleService.findOne(id).getName()).isEqualTo("Update");
+        } finally {
+            peopleService.delete(id, null);
+        }
+
+        assertThatThrownBy(() -> peopleService.findOne(id)).isInstanceOf(PersonNotFoundException.class);
+        assertThatThrownBy(() -> peopleService.update(id, 1, "Gone", null, null))
+                .isInstanceOf(PersonNotFoundException.class);
+    }
+
+    // чтение из другого потока до коммита кладет в кэш старую строку, после коммита ее там быть не должно
+    @Test
+    void cacheIsEvictedAfterCommit() throws Exception {
+        Person person = new Person("Cached", 40);
+        person.setEmail("cached@mail.ru");
+        peopleService.save(person);
+        int id = person.getId();
+
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                peopleService.update(id, 0, null, 41, null);
+                try {
+                    Person concurrent = CompletableFuture.supplyAsync(() -> peopleService.findOne(id))
+                            .get(10, TimeUnit.SECONDS);
+                    assertThat(concurrent.getAge()).isEqualTo(40);
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+
+            assertThat(peopleService.findOne(id).getAge()).isEqualTo(41);
+        } finally {
+            peopleService.delete(id, null);
+        }
+    }
+}